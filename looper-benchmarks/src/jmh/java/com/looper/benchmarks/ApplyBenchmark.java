@@ -0,0 +1,89 @@
+package com.looper.benchmarks;
+
+import com.looper.Logger;
+import com.looper.Material;
+import com.looper.core.Procedurer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Procedurer.apply 吞吐：
+ * 1. batch = 1 单个添加，batch > 1 以 List 批量添加。
+ * 2. duplicates = false 每次添加新原料；true 在少量原料中循环添加，覆盖已成功拒绝 及 队列中移到队尾的路径。
+ * 工序正常轮训处理，添加与弹出并发，与实际使用一致。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ApplyBenchmark {
+    private static final int DUPLICATE_KEYS = 1024;
+
+    @Param({"1", "64"})
+    public int batch;
+
+    @Param({"false", "true"})
+    public boolean duplicates;
+
+    private Procedurer<Material<Integer>, Integer> procedurer;
+    private final List<Material<Integer>> materials = new ArrayList<>();
+    private final List<Material<Integer>> batchList = new ArrayList<>();
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Logger.setDebug(false);
+        procedurer = new Procedurer<Material<Integer>, Integer>(0, true) {
+            @Override
+            public Material<Integer> onProcess(Material<Integer> material) {
+                return material;
+            }
+        };
+        for (int i = 0; i < DUPLICATE_KEYS; i++) {
+            materials.add(new Material<>(i, true));
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void clear() {
+        procedurer.clear();
+        cursor = 0;
+    }
+
+    @TearDown(Level.Trial)
+    public void release() {
+        procedurer.release();
+    }
+
+    @Benchmark
+    public int apply() {
+        if (batch == 1) {
+            return procedurer.apply(next());
+        }
+        batchList.clear();
+        for (int i = 0; i < batch; i++) {
+            batchList.add(next());
+        }
+        return procedurer.apply(batchList);
+    }
+
+    private Material<Integer> next() {
+        int key = cursor++;
+        if (duplicates) {
+            return materials.get(key & (DUPLICATE_KEYS - 1));
+        }
+        return new Material<>(key, true);
+    }
+}
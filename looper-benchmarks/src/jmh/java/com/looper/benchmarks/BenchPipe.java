@@ -0,0 +1,69 @@
+package com.looper.benchmarks;
+
+import com.looper.Material;
+import com.looper.core.FlowPipe;
+
+/**
+ * 基准测试管道：每道工序原样返回原料（原料状态为成功），记录末道工序处理的原料数及最后的原料
+ * 状态集由基准测试在每次调用前清理
+ */
+class BenchPipe extends FlowPipe<Material<Long>, Long> {
+    // 等待处理完毕的超时 毫秒
+    private static final long TIMEOUT = 10000;
+
+    volatile long completed;
+    volatile long last = -1;
+
+    BenchPipe(int procedure, boolean autoLoopNext) {
+        super(procedure, autoLoopNext);
+    }
+
+    @Override
+    public Material<Long> onProcess(int index, Material<Long> material) {
+        if (index == maxProcedure - 1) {
+            synchronized (this) {
+                completed++;
+            }
+            last = material.material();
+        }
+        return material;
+    }
+
+    /**
+     * 等待末道工序处理完 count 个原料：onProcess 返回后原料仍在末道工序，onAfterProcess 完成后才离开管道，
+     * 非自动轮训此后才分发下个原料，需等待管道中的原料数为0，否则与下次调用前的 clear 竞争
+     */
+    void awaitCompleted(long count) {
+        long deadline = System.nanoTime() + TIMEOUT * 1000000;
+        while (completed < count || active() > 0) {
+            check(deadline);
+        }
+    }
+
+    /**
+     * 等待末道工序处理完 key 对应的原料
+     */
+    void awaitLast(long key) {
+        long deadline = System.nanoTime() + TIMEOUT * 1000000;
+        while (last != key || active() > 0) {
+            check(deadline);
+        }
+    }
+
+    /**
+     * 超时抛出异常使本次迭代失败，而非无限等待
+     */
+    private void check(long deadline) {
+        if (System.nanoTime() - deadline > 0) {
+            throw new IllegalStateException("timeout: completed = " + completed + " last = " + last + " active = " + active());
+        }
+        Thread.yield();
+    }
+
+    /**
+     * 基准测试持续添加原料，不在工序空闲时清理状态集
+     */
+    @Override
+    public void onComplete(int index) {
+    }
+}
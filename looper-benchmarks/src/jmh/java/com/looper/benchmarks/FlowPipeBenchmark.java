@@ -0,0 +1,70 @@
+package com.looper.benchmarks;
+
+import com.looper.Logger;
+import com.looper.Material;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FlowPipe 端到端吞吐：每次调用添加 MATERIALS 个新原料，等待全部流转到末道工序。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FlowPipeBenchmark {
+    private static final int MATERIALS = 1000;
+
+    @Param({"1", "4", "8"})
+    public int stages;
+
+    @Param({"true", "false"})
+    public boolean autoLoopNext;
+
+    private BenchPipe pipe;
+    private final List<Material<Long>> materials = new ArrayList<>(MATERIALS);
+    private long round;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Logger.setDebug(false);
+        pipe = new BenchPipe(stages, autoLoopNext);
+    }
+
+    @Setup(Level.Invocation)
+    public void prepare() {
+        pipe.clear();
+        pipe.completed = 0;
+        materials.clear();
+        long base = (round++) * MATERIALS;
+        for (int i = 0; i < MATERIALS; i++) {
+            materials.add(new Material<>(base + i, true));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void release() {
+        pipe.release();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MATERIALS)
+    public long flow() {
+        pipe.apply(materials);
+        pipe.awaitCompleted(MATERIALS);
+        return pipe.completed;
+    }
+}
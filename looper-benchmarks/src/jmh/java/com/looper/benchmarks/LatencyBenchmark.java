@@ -0,0 +1,59 @@
+package com.looper.benchmarks;
+
+import com.looper.Logger;
+import com.looper.Material;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个原料从添加到末道工序处理完毕的延迟，SampleTime 模式输出 p50/p99 等分位。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LatencyBenchmark {
+
+    @Param({"1", "4", "8"})
+    public int stages;
+
+    @Param({"true", "false"})
+    public boolean autoLoopNext;
+
+    private BenchPipe pipe;
+    private long key;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Logger.setDebug(false);
+        pipe = new BenchPipe(stages, autoLoopNext);
+    }
+
+    @Setup(Level.Iteration)
+    public void clear() {
+        pipe.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void release() {
+        pipe.release();
+    }
+
+    @Benchmark
+    public long latency() {
+        long current = key++;
+        pipe.apply(new Material<>(current, true));
+        pipe.awaitLast(current);
+        return current;
+    }
+}
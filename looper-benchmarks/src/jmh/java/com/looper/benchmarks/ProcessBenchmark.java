@@ -0,0 +1,93 @@
+package com.looper.benchmarks;
+
+import com.looper.Logger;
+import com.looper.Material;
+import com.looper.core.Procedurer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个工序的弹出、处理吞吐：每次调用批量添加 MATERIALS 个新原料，等待全部处理完毕。
+ * 结合 -prof gc 的 gc.alloc.rate.norm 观察每个原料的分配量。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProcessBenchmark {
+    private static final int MATERIALS = 10000;
+    // 等待处理完毕的超时 毫秒
+    private static final long TIMEOUT = 10000;
+
+    @Param({"1", "4"})
+    public int concurrency;
+
+    private Procedurer<Material<Integer>, Integer> procedurer;
+    private final List<Material<Integer>> materials = new ArrayList<>(MATERIALS);
+    private volatile int processed;
+    private int round;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Logger.setDebug(false);
+        procedurer = new Procedurer<Material<Integer>, Integer>(0, true) {
+            @Override
+            public Material<Integer> onProcess(Material<Integer> material) {
+                return material;
+            }
+
+            @Override
+            protected void onAfterProcess(Material<Integer> material, Material<Integer> result) {
+                // 处理完成后计数 避免与下次调用前的 clear 竞争
+                synchronized (this) {
+                    processed++;
+                }
+            }
+        };
+        procedurer.setConcurrency(concurrency);
+    }
+
+    @Setup(Level.Invocation)
+    public void prepare() {
+        procedurer.clear();
+        processed = 0;
+        materials.clear();
+        int base = (round++) * MATERIALS;
+        for (int i = 0; i < MATERIALS; i++) {
+            materials.add(new Material<>(base + i, true));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void release() {
+        procedurer.release();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MATERIALS)
+    public int process() {
+        procedurer.apply(materials);
+        long deadline = System.nanoTime() + TIMEOUT * 1000000;
+        while (processed < MATERIALS) {
+            // 超时使本次迭代失败 而非无限等待
+            if (System.nanoTime() - deadline > 0) {
+                throw new IllegalStateException("timeout: processed = " + processed);
+            }
+            Thread.yield();
+        }
+        return processed;
+    }
+}
@@ -0,0 +1,34 @@
+package com.looper;
+
+/**
+ * 日志：关闭调试时不输出，也不拼接字符串
+ * 带参数的重载在输出时才格式化（String.format），热路径应使用重载或先判断 isDebug()
+ */
+public class Logger {
+    private static volatile boolean debug = true;
+
+    public static void setDebug(boolean debug) {
+        Logger.debug = debug;
+    }
+
+    public static boolean isDebug() {
+        return debug;
+    }
+
+    public static void e(String tag, Object obj) {
+        if (debug) Platform.get().log(tag, obj.toString());
+    }
+
+    public static void e(String tag, String format, Object arg) {
+        if (debug) Platform.get().log(tag, String.format(format, arg));
+    }
+
+    public static void e(String tag, String format, Object arg1, Object arg2) {
+        if (debug) Platform.get().log(tag, String.format(format, arg1, arg2));
+    }
+
+    public static void e(String tag, String format, Object arg1, Object arg2, Object arg3) {
+        if (debug) Platform.get().log(tag, String.format(format, arg1, arg2, arg3));
+    }
+
+}
\ No newline at end of file
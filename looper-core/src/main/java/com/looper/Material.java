@@ -6,6 +6,8 @@ public class Material<M> implements IMaterial<M> {
     private M m;
     private int count;
     private boolean status = false;
+    private int priority;
+    private long deadline;
 
     public Material(M m) {
         this.m = m;
@@ -16,6 +18,15 @@ public class Material<M> implements IMaterial<M> {
         this.status = status;
     }
 
+    /**
+     * @param priority 优先级 值越大越先处理
+     */
+    public Material(M m, boolean status, int priority) {
+        this.m = m;
+        this.status = status;
+        this.priority = priority;
+    }
+
     @Override
     public M material() {
         return m;
@@ -36,6 +47,29 @@ public class Material<M> implements IMaterial<M> {
         return count;
     }
 
+    @Override
+    public int priority() {
+        return priority;
+    }
+
+    /**
+     * @param deadline 截止时间 System.currentTimeMillis() 0：无截止时间
+     */
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    @Override
+    public long deadline() {
+        return deadline;
+    }
+
+    @Override
+    public Object key() {
+        // 原料为空时 只与自身相等
+        return null != m ? m : this;
+    }
+
     @Override
     public boolean equals(Object o) {
         return this == o ||
@@ -43,12 +77,18 @@ public class Material<M> implements IMaterial<M> {
                         null != m && m.equals(((Material) o).m));
     }
 
+    @Override
+    public int hashCode() {
+        return null != m ? m.hashCode() : System.identityHashCode(this);
+    }
+
     @Override
     public String toString() {
         return "{" +
                 "m:" + m +
                 ", count:" + count +
                 ", status:" + status +
+                ", priority:" + priority +
                 '}';
     }
 }
\ No newline at end of file
@@ -0,0 +1,38 @@
+package com.looper;
+
+import com.looper.core.ExecutorScheduler;
+import com.looper.interfaces.IScheduler;
+
+/**
+ * 运行平台：
+ * 1. Android 环境（引入 looper 模块）：HandlerThread 调度，日志输出到 Logcat。
+ * 2. JVM 环境：ScheduledExecutorService 调度，日志输出到标准错误流。
+ */
+public class Platform {
+    private static final String ANDROID_PLATFORM = "com.looper.android.AndroidPlatform";
+    private static final Platform PLATFORM = findPlatform();
+
+    public static Platform get() {
+        return PLATFORM;
+    }
+
+    /**
+     * 默认的调度器工厂
+     */
+    public IScheduler.Factory schedulerFactory() {
+        return ExecutorScheduler.FACTORY;
+    }
+
+    public void log(String tag, String msg) {
+        System.err.println(tag + ": " + msg);
+    }
+
+    private static Platform findPlatform() {
+        try {
+            Class<?> clazz = Class.forName(ANDROID_PLATFORM);
+            return (Platform) clazz.getDeclaredConstructor().newInstance();
+        } catch (Throwable e) {
+            return new Platform();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.looper.core;
+
+import com.looper.interfaces.IProcedure.Circuit;
+
+/**
+ * 熔断器：
+ * 1. 闭合：正常处理，按最近 window 次处理的结果统计失败率，处理次数达到 window 且失败率达到阈值时断开。
+ * 2. 断开：不弹出原料，原料在列表中等待，经过断开时长后半开。
+ * 3. 半开：放行至多 PROBES 次试探处理，任一失败重新断开，全部成功后闭合并清空统计。
+ * 多个工作线程共用一个实例。
+ */
+public class CircuitBreaker {
+    // 半开时的试探次数
+    private static final int PROBES = 3;
+
+    private final double failureRate;
+    // 最近处理结果的环形记录 true：失败
+    private final boolean[] outcomes;
+    // 断开时长 纳秒
+    private final long openTime;
+    private int cursor;
+    private int count;
+    private int failures;
+    private Circuit state = Circuit.CLOSED;
+    // 半开的时间 System.nanoTime()
+    private long halfOpenAt;
+    // 半开时处理中及已成功的试探数
+    private int probing;
+    private int probed;
+
+    /**
+     * @param failureRate 失败率阈值 0~1
+     * @param window      统计的最近处理次数
+     * @param openTime    断开时长 毫秒
+     */
+    public CircuitBreaker(double failureRate, int window, long openTime) {
+        this.failureRate = Math.min(1, failureRate);
+        this.outcomes = new boolean[Math.max(1, window)];
+        this.openTime = Math.max(1, openTime) * 1000000;
+    }
+
+    public synchronized Circuit state() {
+        return state;
+    }
+
+    /**
+     * 尝试放行一次处理
+     *
+     * @return 0：放行 大于0：断开 需等待的时间 毫秒 小于0：半开 等待试探结果
+     */
+    public synchronized long acquire() {
+        if (state == Circuit.OPEN) {
+            long wait = halfOpenAt - System.nanoTime();
+            if (wait > 0) return Math.max(1, (wait + 999999) / 1000000);
+            state = Circuit.HALF_OPEN;
+            probing = 0;
+            probed = 0;
+        }
+        if (state == Circuit.HALF_OPEN) {
+            if (probing + probed >= PROBES) return -1;
+            probing++;
+        }
+        return 0;
+    }
+
+    /**
+     * 放行的处理未进行 归还试探
+     */
+    public synchronized void release() {
+        if (state == Circuit.HALF_OPEN && probing > 0) probing--;
+    }
+
+    /**
+     * 记录处理结果
+     *
+     * @return 是否可继续放行：半开的试探成功或闭合
+     */
+    public synchronized boolean record(boolean success) {
+        switch (state) {
+            case CLOSED:
+                if (count == outcomes.length) {
+                    if (outcomes[cursor]) failures--;
+                } else {
+                    count++;
+                }
+                outcomes[cursor] = !success;
+                if (!success) failures++;
+                cursor = (cursor + 1) % outcomes.length;
+                if (count == outcomes.length && failures >= failureRate * count) open();
+                return false;
+            case HALF_OPEN:
+                if (probing > 0) probing--;
+                if (!success) {
+                    open();
+                    return false;
+                }
+                if (++probed >= PROBES) close();
+                return true;
+            default:
+                // 断开前放行的处理
+                return false;
+        }
+    }
+
+    private void open() {
+        state = Circuit.OPEN;
+        halfOpenAt = System.nanoTime() + openTime;
+    }
+
+    private void close() {
+        state = Circuit.CLOSED;
+        cursor = 0;
+        count = 0;
+        failures = 0;
+    }
+}
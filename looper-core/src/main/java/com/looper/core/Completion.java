@@ -0,0 +1,127 @@
+package com.looper.core;
+
+import com.looper.interfaces.ICompletion;
+import com.looper.interfaces.IMaterial;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 原料的处理结果：
+ * 按未完成的分支数计数，提交方持有一个，原料每流转到一道工序加一，离开工序减一，减至0时完成并记录最后离开的结果；
+ * 有分支失败或被丢弃时，记录首个失败的结果，不再被其他分支成功的结果覆盖。
+ * 不依赖 CompletableFuture，可运行于 Android API 21。
+ *
+ * @param <IM> IMaterial
+ */
+public class Completion<IM extends IMaterial> implements ICompletion<IM> {
+    // 未完成的分支数 含提交方持有的一个
+    private final AtomicInteger pending = new AtomicInteger(1);
+    private IM result;
+    private int index = -1;
+    private int attempts;
+    private boolean done;
+    // 已记录失败的结果
+    private boolean failed;
+    private List<Listener<IM>> listeners;
+
+    /**
+     * 流转到一道工序
+     */
+    void retain() {
+        pending.incrementAndGet();
+    }
+
+    /**
+     * 离开一道工序，记录结果
+     *
+     * @param result null：被丢弃、被拒绝 视为失败
+     */
+    void release(IM result, int index, int attempts) {
+        synchronized (this) {
+            if (done) return;
+            if (!failed) {
+                this.result = result;
+                this.index = index;
+                this.attempts = attempts;
+                failed = null == result || !result.state();
+            }
+        }
+        release();
+    }
+
+    /**
+     * 减少一个分支 不记录结果
+     */
+    void release() {
+        if (pending.decrementAndGet() != 0) return;
+        List<Listener<IM>> listeners;
+        synchronized (this) {
+            done = true;
+            notifyAll();
+            listeners = this.listeners;
+            this.listeners = null;
+        }
+        if (null == listeners) return;
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).onComplete(this);
+        }
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public synchronized IM result() {
+        return done ? result : null;
+    }
+
+    @Override
+    public synchronized int index() {
+        return done ? index : -1;
+    }
+
+    @Override
+    public synchronized int attempts() {
+        return done ? attempts : 0;
+    }
+
+    @Override
+    public synchronized IM await() throws InterruptedException {
+        while (!done) {
+            wait();
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized boolean await(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        long wait = timeout;
+        while (!done && wait > 0) {
+            wait(wait);
+            wait = deadline - System.currentTimeMillis();
+        }
+        return done;
+    }
+
+    @Override
+    public void listen(Listener<IM> listener) {
+        synchronized (this) {
+            if (!done) {
+                if (null == listeners) listeners = new ArrayList<>(1);
+                listeners.add(listener);
+                return;
+            }
+        }
+        listener.onComplete(this);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "{done:" + done + ", index:" + index + ", attempts:" + attempts + ", result:" + result + "}";
+    }
+}
@@ -0,0 +1,116 @@
+package com.looper.core;
+
+import com.looper.interfaces.IConcurrencyLimit;
+
+/**
+ * 常用自适应并行数：
+ * 1. aimd：加性增乘性减，处理成功且耗时未超过阈值时每轮（并行数个任务）加1，失败或超时按比例减小。
+ * 2. gradient：按短期耗时与基线耗时（无排队时的耗时）的比值（梯度）调整，耗时上升时按比例收缩，
+ * 耗时平稳时增加 sqrt(并行数) 的排队余量，失败时按梯度 0.5 收缩；基线仅在并行数收缩到最小时上调。
+ * 处理中的任务数不足并行数的一半时，瓶颈不在下游，不增加并行数。
+ */
+public class ConcurrencyLimit {
+    // gradient：短期耗时、基线耗时的平均窗口（任务数）
+    private static final int SHORT_WINDOW = 10;
+    private static final int LONG_WINDOW = 600;
+    // gradient：容忍短期耗时超出基线的比例 及调整的平滑系数
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+
+    private ConcurrencyLimit() {
+    }
+
+    /**
+     * 加性增乘性减
+     *
+     * @param min     最小并行数 初始并行数
+     * @param max     最大并行数
+     * @param timeout 耗时阈值 毫秒，超过视为失败；小于等于0：不按耗时判定
+     * @param backoff 失败时的收缩比例 0~1
+     */
+    public static IConcurrencyLimit aimd(int min, int max, long timeout, double backoff) {
+        return new Aimd(min, max, timeout, backoff);
+    }
+
+    /**
+     * 按耗时梯度调整
+     *
+     * @param min 最小并行数 初始并行数
+     * @param max 最大并行数
+     */
+    public static IConcurrencyLimit gradient(int min, int max) {
+        return new Gradient(min, max);
+    }
+
+    private static abstract class Limit implements IConcurrencyLimit {
+        final int min;
+        final int max;
+        double limit;
+
+        Limit(int min, int max) {
+            this.min = Math.max(1, min);
+            this.max = Math.max(this.min, max);
+            this.limit = this.min;
+        }
+
+        @Override
+        public int initial() {
+            return min;
+        }
+
+        int update(double limit) {
+            this.limit = Math.max(min, Math.min(max, limit));
+            return (int) this.limit;
+        }
+    }
+
+    private static class Aimd extends Limit {
+        // 耗时阈值 微秒
+        private final long timeout;
+        private final double backoff;
+
+        Aimd(int min, int max, long timeout, double backoff) {
+            super(min, max);
+            this.timeout = timeout <= 0 ? Long.MAX_VALUE : timeout * 1000;
+            this.backoff = backoff > 0 && backoff < 1 ? backoff : 0.9;
+        }
+
+        @Override
+        public synchronized int onSample(long latency, int inFlight, boolean success) {
+            if (!success || latency > timeout) return update(limit * backoff);
+            if (inFlight * 2 < limit) return (int) limit;
+            return update(limit + 1 / limit);
+        }
+    }
+
+    private static class Gradient extends Limit {
+        // 短期平均耗时 及基线耗时 微秒
+        private double shortRtt;
+        private double longRtt;
+
+        Gradient(int min, int max) {
+            super(min, max);
+        }
+
+        @Override
+        public synchronized int onSample(long latency, int inFlight, boolean success) {
+            double rtt = Math.max(1, latency);
+            if (shortRtt == 0) {
+                shortRtt = rtt;
+                longRtt = rtt;
+            }
+            shortRtt += (rtt - shortRtt) / SHORT_WINDOW;
+            // 基线随耗时下降；仅在并行数已收缩到最小时随耗时上升（下游整体变慢），避免随并行数增加而抬高
+            if (rtt < longRtt || limit <= min) longRtt += (rtt - longRtt) / LONG_WINDOW;
+            if (success && inFlight * 2 < limit) return (int) limit;
+            double next;
+            if (success) {
+                double gradient = Math.max(0.5, Math.min(1, TOLERANCE * longRtt / shortRtt));
+                next = limit * gradient + Math.sqrt(limit);
+            } else {
+                next = limit * 0.5;
+            }
+            return update(limit * (1 - SMOOTHING) + next * SMOOTHING);
+        }
+    }
+}
@@ -0,0 +1,498 @@
+package com.looper.core;
+
+import com.looper.Logger;
+import com.looper.Platform;
+import com.looper.interfaces.IMaterial;
+import com.looper.interfaces.IProcedure;
+import com.looper.interfaces.IRoute;
+import com.looper.interfaces.IScheduler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 有向无环图管道：
+ * 1. 节点间的流转由 Graph 描述，节点处理成功的结果按出边流转：无条件的出边广播，带 IRoute 的出边按条件流转。
+ * 2. 广播到多个节点时，除首个节点外各节点收到 fork 的副本，尝试次数分别计数。
+ * 3. 汇合节点等待所有入边节点的结果，按原料 key() 汇齐后回调 onJoin 合并为一个原料再处理，各分支的结果需保留相同的 key()。
+ * 4. 各节点独立轮训，互不依赖的分支并行处理。
+ * 处理完毕：
+ * 同 FlowPipe 以管道中的原料数判定，汇合缓存中的结果已离开入边节点不计入；
+ * 原料数为0时仍未汇齐的原料不会再汇齐，回调 onJoinIncomplete 后丢弃；
+ * 持续添加时管道不会处理完毕，汇合节点按等待超时（setJoinTimeout）及缓存上限（setJoinCapacity）同样丢弃最早未汇齐的原料，之后到达的分支不再汇齐。
+ * 提交的原料（见 submit）在汇合节点等待时未完成，汇齐后随合并的原料流转；未汇齐被丢弃或 onJoin 不流转时按失败完成。
+ * 节点索引即工序索引，仅支持自动轮训。
+ *
+ * @param <IM>
+ * @param <M>  原料的类型
+ */
+public abstract class DagPipe<IM extends IMaterial<M>, M> extends FlowPipe<IM, M> {
+    // 汇合节点默认缓存的原料数上限
+    public static final int JOIN_CAPACITY = 100000;
+
+    private final Graph<IM> graph;
+    // 汇合缓存 key:原料key value:按入边顺序的结果，按首个结果到达的顺序；非汇合节点为null
+    private final List<Map<Object, Parts<IM>>> joins;
+    // 各汇合节点等待汇齐的超时 纳秒 0：不超时；写时复制
+    private volatile long[] joinTimeouts;
+    // 各汇合节点缓存的原料数上限 写时复制
+    private volatile int[] joinCapacities;
+
+    public DagPipe(Graph<IM> graph) {
+        this(graph, Platform.get().schedulerFactory());
+    }
+
+    /**
+     * @param graph            节点及流转关系
+     * @param schedulerFactory 节点调度器工厂 决定执行后端
+     */
+    public DagPipe(Graph<IM> graph, IScheduler.Factory schedulerFactory) {
+        super(graph.size, true, schedulerFactory);
+        this.graph = graph;
+        joins = new ArrayList<>(graph.size);
+        for (int i = 0; i < graph.size; i++) {
+            joins.add(graph.join[i] ? new LinkedHashMap<Object, Parts<IM>>() : null);
+        }
+        joinTimeouts = new long[graph.size];
+        joinCapacities = new int[graph.size];
+        Arrays.fill(joinCapacities, JOIN_CAPACITY);
+    }
+
+    /**
+     * 汇合节点等待汇齐的超时：首个结果到达后超时仍未汇齐的原料，在之后有结果到达时丢弃
+     *
+     * @param index   汇合节点索引
+     * @param timeout 毫秒 小于等于0：不超时
+     */
+    public void setJoinTimeout(int index, long timeout) {
+        if (index < 0 || index >= graph.size) return;
+        synchronized (this) {
+            long[] copy = joinTimeouts.clone();
+            copy[index] = TimeUnit.MILLISECONDS.toNanos(Math.max(0, timeout));
+            joinTimeouts = copy;
+        }
+    }
+
+    /**
+     * 汇合节点缓存的原料数上限：超出时丢弃最早未汇齐的原料
+     *
+     * @param index    汇合节点索引
+     * @param capacity 上限 至少为1
+     */
+    public void setJoinCapacity(int index, int capacity) {
+        if (index < 0 || index >= graph.size) return;
+        synchronized (this) {
+            int[] copy = joinCapacities.clone();
+            copy[index] = Math.max(1, capacity);
+            joinCapacities = copy;
+        }
+    }
+
+    /**
+     * 添加原料，流转到所有起始节点（无入边的节点）
+     *
+     * @return 各起始节点添加原料的记录数之和
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public int apply(Object obj) {
+        if (null == obj) return 0;
+        enter();
+        try {
+            int count = 0;
+            int[] roots = graph.roots;
+            for (int i = 0; i < roots.length; i++) {
+                Object m = i == 0 ? obj : forkAll(obj);
+                int applied;
+                if (m instanceof IMaterial) {
+                    applied = deliver(roots[i], (IM) m);
+                } else {
+                    IProcedure root = getProcedure(roots[i]);
+                    applied = root.apply(m);
+                    if (applied > 0) markApplied(roots[i]);
+                }
+                count += applied;
+            }
+            return count;
+        } finally {
+            leave();
+        }
+    }
+
+    @Override
+    protected void forward(int index, IM result) {
+        int[] successors = graph.successors[index];
+        IRoute<IM>[] routes = graph.routes[index];
+        boolean forked = false;
+        for (int i = 0; i < successors.length; i++) {
+            if (null != routes[i] && !routes[i].accept(result)) continue;
+            IM m = forked ? fork(result) : result;
+            forked = true;
+            int to = successors[i];
+            if (graph.join[to]) {
+                join(index, to, m);
+            } else {
+                deliver(to, m);
+            }
+        }
+    }
+
+    @Override
+    protected void forward(int index, List<IM> results) {
+        for (int i = 0; i < results.size(); i++) {
+            forward(index, results.get(i));
+        }
+    }
+
+    @Override
+    protected int[] successors(int index) {
+        return graph.successors[index];
+    }
+
+    /**
+     * 缓存分支结果，汇齐后合并流转到汇合节点
+     * 在入边节点处理中调用，汇齐的原料在入边节点离开前流转
+     */
+    @SuppressWarnings("unchecked")
+    private void join(int from, int to, IM part) {
+        int[] predecessors = graph.predecessors[to];
+        int slot = 0;
+        while (predecessors[slot] != from) slot++;
+        // 等待其他分支期间 提交的原料未完成
+        Ticket<IM> held = hold();
+        Map<Object, Parts<IM>> buffer = joins.get(to);
+        Parts<IM> parts;
+        List<Parts<IM>> evicted = null;
+        boolean complete = true;
+        synchronized (buffer) {
+            Object key = part.key();
+            parts = buffer.get(key);
+            if (null == parts) {
+                long now = System.nanoTime();
+                evicted = evict(to, buffer, now);
+                parts = new Parts<>(predecessors.length, now);
+                buffer.put(key, parts);
+            }
+            parts.parts[slot] = part;
+            parts.held.add(held);
+            for (int i = 0; i < parts.parts.length && complete; i++) {
+                complete = null != parts.parts[i];
+            }
+            if (complete) buffer.remove(key);
+        }
+        if (null != evicted) incomplete(to, evicted);
+        if (!complete) return;
+        List<IM> list = new ArrayList<>(parts.parts.length);
+        for (int i = 0; i < parts.parts.length; i++) {
+            list.add((IM) parts.parts[i]);
+        }
+        IM merged = null;
+        try {
+            merged = onJoin(to, list);
+        } finally {
+            if (null != merged) {
+                resume(to, merged, parts.held);
+            } else {
+                drop(to, parts.held);
+            }
+        }
+    }
+
+    /**
+     * 缓存新的原料前 取出超时及超出上限的最早未汇齐的原料，需持有汇合缓存的锁
+     *
+     * @return null：无
+     */
+    private List<Parts<IM>> evict(int index, Map<Object, Parts<IM>> buffer, long now) {
+        long timeout = joinTimeouts[index];
+        int capacity = joinCapacities[index];
+        List<Parts<IM>> evicted = null;
+        Iterator<Parts<IM>> it = buffer.values().iterator();
+        while (it.hasNext()) {
+            Parts<IM> eldest = it.next();
+            boolean expired = timeout > 0 && now - eldest.time >= timeout;
+            if (!expired && buffer.size() < capacity) break;
+            it.remove();
+            if (null == evicted) evicted = new ArrayList<>();
+            evicted.add(eldest);
+        }
+        return evicted;
+    }
+
+    /**
+     * 丢弃未汇齐的原料 提交的原料按失败完成
+     */
+    private void incomplete(int index, List<Parts<IM>> incomplete) {
+        for (int j = 0; j < incomplete.size(); j++) {
+            Parts<IM> parts = incomplete.get(j);
+            try {
+                onJoinIncomplete(index, parts.arrived());
+            } finally {
+                drop(index, parts.held);
+            }
+        }
+    }
+
+    /**
+     * 管道中无原料，丢弃未汇齐的原料 提交的原料按失败完成
+     */
+    @Override
+    protected boolean isComplete() {
+        if (!super.isComplete()) return false;
+        for (int i = 0; i < graph.size; i++) {
+            incomplete(i, takeAll(i));
+        }
+        return true;
+    }
+
+    /**
+     * 取出汇合节点缓存的所有结果
+     */
+    private List<Parts<IM>> takeAll(int index) {
+        Map<Object, Parts<IM>> buffer = joins.get(index);
+        if (null == buffer) return new ArrayList<>(0);
+        synchronized (buffer) {
+            List<Parts<IM>> all = new ArrayList<>(buffer.values());
+            buffer.clear();
+            return all;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object forkAll(Object obj) {
+        if (obj instanceof IMaterial) return fork((IM) obj);
+        if (!(obj instanceof List)) return obj;
+        List<IM> ms = (List<IM>) obj;
+        List<IM> copies = new ArrayList<>(ms.size());
+        for (int i = 0; i < ms.size(); i++) {
+            copies.add(fork(ms.get(i)));
+        }
+        return copies;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        for (int i = 0; i < graph.size; i++) {
+            List<Parts<IM>> all = takeAll(i);
+            for (int j = 0; j < all.size(); j++) {
+                drop(i, all.get(j).held);
+            }
+        }
+    }
+
+    /**
+     * 同一原料在汇合节点各入边节点的结果已汇齐，合并为汇合节点的原料
+     *
+     * @param index 汇合节点索引
+     * @param parts 按入边顺序的结果
+     * @return 汇合节点的原料 null：不流转；默认首个入边节点的结果
+     */
+    protected IM onJoin(int index, List<IM> parts) {
+        return parts.get(0);
+    }
+
+    /**
+     * 管道处理完毕时、或等待超时及超出缓存上限时仍未汇齐的原料（部分分支失败或被条件路由跳过），回调后丢弃
+     *
+     * @param index 汇合节点索引
+     * @param parts 已到达的结果
+     */
+    protected void onJoinIncomplete(int index, List<IM> parts) {
+        Logger.e(TAG, " join incomplete index %s :%s", index, parts);
+    }
+
+    /**
+     * 节点及流转关系 由 Builder 构建，不可变
+     *
+     * @param <IM> IMaterial
+     */
+    public static class Graph<IM extends IMaterial> {
+        private final int size;
+        private final int[][] successors;
+        private final IRoute<IM>[][] routes;
+        private final int[][] predecessors;
+        private final boolean[] join;
+        // 无入边的起始节点
+        private final int[] roots;
+
+        @SuppressWarnings("unchecked")
+        private Graph(int size, List<Edge<IM>> edges, boolean[] join) {
+            this.size = size;
+            this.join = join.clone();
+            successors = new int[size][];
+            routes = new IRoute[size][];
+            predecessors = new int[size][];
+            int[] out = new int[size];
+            int[] in = new int[size];
+            for (Edge<IM> edge : edges) {
+                out[edge.from]++;
+                in[edge.to]++;
+            }
+            for (int i = 0; i < size; i++) {
+                successors[i] = new int[out[i]];
+                routes[i] = new IRoute[out[i]];
+                predecessors[i] = new int[in[i]];
+                out[i] = 0;
+                in[i] = 0;
+            }
+            for (Edge<IM> edge : edges) {
+                routes[edge.from][out[edge.from]] = edge.route;
+                successors[edge.from][out[edge.from]++] = edge.to;
+                predecessors[edge.to][in[edge.to]++] = edge.from;
+            }
+            // 拓扑排序 存在环时排序不完整
+            int[] degree = in.clone();
+            ArrayDeque<Integer> ready = new ArrayDeque<>();
+            List<Integer> roots = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                if (degree[i] == 0) {
+                    ready.add(i);
+                    roots.add(i);
+                }
+            }
+            int count = 0;
+            while (!ready.isEmpty()) {
+                int node = ready.poll();
+                count++;
+                for (int to : successors[node]) {
+                    if (--degree[to] == 0) ready.add(to);
+                }
+            }
+            if (count < size) {
+                throw new IllegalArgumentException("graph has a cycle");
+            }
+            this.roots = new int[roots.size()];
+            for (int i = 0; i < roots.size(); i++) {
+                this.roots[i] = roots.get(i);
+            }
+        }
+
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder("{");
+            for (int i = 0; i < size; i++) {
+                if (i > 0) builder.append(", ");
+                builder.append(i);
+                if (join[i]) builder.append("(join)");
+                builder.append("->").append(Arrays.toString(successors[i]));
+            }
+            return builder.append('}').toString();
+        }
+    }
+
+    /**
+     * 构建节点及流转关系：
+     * edge(from, to) 无条件流转，同一节点的多条无条件出边即广播；edge(from, to, route) 按条件流转；
+     * join(node) 标记汇合节点，需至少两条入边。
+     *
+     * @param <IM> IMaterial
+     */
+    public static class Builder<IM extends IMaterial> {
+        private final int size;
+        private final List<Edge<IM>> edges = new ArrayList<>();
+        private final boolean[] join;
+
+        /**
+         * @param nodes 节点数
+         */
+        public Builder(int nodes) {
+            if (nodes < 1) throw new IllegalArgumentException("nodes < 1");
+            size = nodes;
+            join = new boolean[nodes];
+        }
+
+        public Builder<IM> edge(int from, int to) {
+            return edge(from, to, null);
+        }
+
+        /**
+         * @param route 流转条件 null：无条件
+         */
+        public Builder<IM> edge(int from, int to, IRoute<IM> route) {
+            check(from);
+            check(to);
+            if (from == to) throw new IllegalArgumentException("self edge: " + from);
+            for (Edge<IM> edge : edges) {
+                if (edge.from == from && edge.to == to) {
+                    throw new IllegalArgumentException("duplicate edge: " + from + "->" + to);
+                }
+            }
+            edges.add(new Edge<>(from, to, route));
+            return this;
+        }
+
+        /**
+         * 标记汇合节点：等待所有入边节点的结果汇齐后再处理
+         */
+        public Builder<IM> join(int node) {
+            check(node);
+            join[node] = true;
+            return this;
+        }
+
+        public Graph<IM> build() {
+            for (int i = 0; i < size; i++) {
+                if (!join[i]) continue;
+                int in = 0;
+                for (Edge<IM> edge : edges) {
+                    if (edge.to == i) in++;
+                }
+                if (in < 2) throw new IllegalArgumentException("join node needs 2+ inputs: " + i);
+            }
+            return new Graph<>(size, edges, join);
+        }
+
+        private void check(int node) {
+            if (node < 0 || node >= size) throw new IllegalArgumentException("node out of range: " + node);
+        }
+    }
+
+    /**
+     * 同一原料在汇合节点已到达的结果 及各结果携带的提交结果
+     */
+    private static class Parts<IM extends IMaterial> {
+        // 按入边顺序 未到达为null
+        private final Object[] parts;
+        private final List<Ticket<IM>> held;
+        // 首个结果到达的时间 System.nanoTime()
+        private final long time;
+
+        Parts(int size, long time) {
+            parts = new Object[size];
+            held = new ArrayList<>(size);
+            this.time = time;
+        }
+
+        @SuppressWarnings("unchecked")
+        List<IM> arrived() {
+            List<IM> list = new ArrayList<>(parts.length);
+            for (int i = 0; i < parts.length; i++) {
+                if (null != parts[i]) list.add((IM) parts[i]);
+            }
+            return list;
+        }
+    }
+
+    private static class Edge<IM extends IMaterial> {
+        private final int from;
+        private final int to;
+        private final IRoute<IM> route;
+
+        Edge(int from, int to, IRoute<IM> route) {
+            this.from = from;
+            this.to = to;
+            this.route = route;
+        }
+    }
+}
@@ -0,0 +1,396 @@
+package com.looper.core;
+
+import com.looper.interfaces.IDeadLetter;
+import com.looper.interfaces.IMaterial;
+import com.looper.interfaces.IMaterialSerializer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 常用死信记录：
+ * 1. memory：内存中保存至多 capacity 条，超出时丢弃最早的记录。
+ * 2. file：内存中保存至多 capacity 条，超出时最早的记录追加写入文件，内存中仅保留文件记录的索引；
+ * 文件中至多 fileCapacity 条有效记录，超出时淘汰最早写入的记录；
+ * entries 读取文件返回文件中的记录；移出文件中的记录时追加移出标记，无效记录（含淘汰的记录）多于有效记录时批量重写文件，
+ * 文件至多约 2 * fileCapacity 条记录；重启时同样只保留最后写入的 fileCapacity 条。
+ * 文件中的记录在进程重启后仍有效，内存中的记录不持久化。一个文件只供一个实例使用。
+ * 记录以 失败的工序索引 + 原料 key() 去重。
+ */
+public class DeadLetter {
+    // 失败原因写入文件的最大长度
+    private static final int MAX_CAUSE = 1024;
+    // 文件中移出标记的尝试次数
+    private static final int REMOVED = -1;
+    // 文件中默认最多保存的记录数
+    public static final int FILE_CAPACITY = 100000;
+
+    private DeadLetter() {
+    }
+
+    /**
+     * @param capacity 最多保存的记录数
+     */
+    public static <IM extends IMaterial> IDeadLetter<IM> memory(int capacity) {
+        return new Memory<>(capacity);
+    }
+
+    /**
+     * @param file       超出容量的记录写入的文件 不存在时创建
+     * @param serializer 原料序列化
+     * @param capacity   内存中最多保存的记录数
+     */
+    public static <IM extends IMaterial> IDeadLetter<IM> file(File file, IMaterialSerializer<IM> serializer, int capacity) {
+        return file(file, serializer, capacity, FILE_CAPACITY);
+    }
+
+    /**
+     * @param file         超出容量的记录写入的文件 不存在时创建
+     * @param serializer   原料序列化
+     * @param capacity     内存中最多保存的记录数
+     * @param fileCapacity 文件中最多保存的记录数 超出时淘汰最早写入的记录
+     */
+    public static <IM extends IMaterial> IDeadLetter<IM> file(File file, IMaterialSerializer<IM> serializer, int capacity, int fileCapacity) {
+        return new Spill<>(file, serializer, capacity, fileCapacity);
+    }
+
+    /**
+     * 创建记录 失败时间为当前时间
+     */
+    static <IM extends IMaterial> IDeadLetter.Entry<IM> entry(IM material, int index, int attempts, String cause) {
+        return new Record<>(material, index, attempts, cause, System.currentTimeMillis());
+    }
+
+    private static class Record<IM extends IMaterial> implements IDeadLetter.Entry<IM> {
+        private final IM material;
+        private final int index;
+        private final int attempts;
+        private final String cause;
+        private final long time;
+
+        Record(IM material, int index, int attempts, String cause, long time) {
+            this.material = material;
+            this.index = index;
+            this.attempts = attempts;
+            this.cause = cause;
+            this.time = time;
+        }
+
+        static <IM extends IMaterial> Record<IM> of(IDeadLetter.Entry<IM> entry) {
+            if (entry instanceof Record) return (Record<IM>) entry;
+            return new Record<>(entry.material(), entry.index(), entry.attempts(), entry.cause(), entry.time());
+        }
+
+        @Override
+        public IM material() {
+            return material;
+        }
+
+        @Override
+        public int index() {
+            return index;
+        }
+
+        @Override
+        public int attempts() {
+            return attempts;
+        }
+
+        @Override
+        public String cause() {
+            return cause;
+        }
+
+        @Override
+        public long time() {
+            return time;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || (o instanceof Record && index == ((Record) o).index
+                    && material.key().equals(((Record) o).material.key()));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * index + material.key().hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "{index:" + index + ", attempts:" + attempts + ", cause:" + cause + ", material:" + material + "}";
+        }
+    }
+
+    /**
+     * 记录的去重键：失败的工序索引 + 原料 key()
+     */
+    private static class Slot {
+        private final int index;
+        private final Object key;
+
+        Slot(IDeadLetter.Entry<?> entry) {
+            this.index = entry.index();
+            this.key = entry.material().key();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || (o instanceof Slot && index == ((Slot) o).index && key.equals(((Slot) o).key));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * index + key.hashCode();
+        }
+    }
+
+    private static class Memory<IM extends IMaterial> implements IDeadLetter<IM> {
+        final int capacity;
+        // 按失败顺序 再次失败的记录移到最后
+        final LinkedHashMap<Record<IM>, Record<IM>> records = new LinkedHashMap<>();
+
+        Memory(int capacity) {
+            this.capacity = Math.max(1, capacity);
+        }
+
+        @Override
+        public synchronized void add(Entry<IM> entry) {
+            Record<IM> record = Record.of(entry);
+            records.remove(record);
+            records.put(record, record);
+            if (records.size() <= capacity) return;
+            List<Record<IM>> overflow = new ArrayList<>(records.size() - capacity);
+            Iterator<Record<IM>> it = records.keySet().iterator();
+            while (records.size() > capacity) {
+                overflow.add(it.next());
+                it.remove();
+            }
+            overflow(overflow);
+        }
+
+        /**
+         * 超出容量的最早记录 默认丢弃
+         */
+        void overflow(List<Record<IM>> overflow) {
+        }
+
+        @Override
+        public synchronized List<Entry<IM>> entries() {
+            return Collections.unmodifiableList(new ArrayList<Entry<IM>>(records.values()));
+        }
+
+        @Override
+        public synchronized boolean remove(Entry<IM> entry) {
+            Record<IM> record = records.get(Record.of(entry));
+            // 仅移出同一次失败的记录
+            if (null == record || record.time != entry.time()) return false;
+            records.remove(record);
+            return true;
+        }
+
+        @Override
+        public synchronized int size() {
+            return records.size();
+        }
+
+        @Override
+        public synchronized void clear() {
+            records.clear();
+        }
+    }
+
+    private static class Spill<IM extends IMaterial> extends Memory<IM> {
+        private final File file;
+        private final IMaterialSerializer<IM> serializer;
+        private final int fileCapacity;
+        // 文件中有效记录的失败时间 按写入顺序 不持有原料
+        private final LinkedHashMap<Slot, Long> spilled = new LinkedHashMap<>();
+        // 文件中的记录数 含已移出、被替换、被淘汰的记录及移出标记
+        private int written;
+
+        Spill(File file, IMaterialSerializer<IM> serializer, int capacity, int fileCapacity) {
+            super(capacity);
+            this.file = file;
+            this.serializer = serializer;
+            this.fileCapacity = Math.max(1, fileCapacity);
+            synchronized (this) {
+                for (Map.Entry<Slot, Record<IM>> entry : read().entrySet()) {
+                    spilled.put(entry.getKey(), entry.getValue().time);
+                }
+                evict();
+                collect();
+            }
+        }
+
+        @Override
+        public synchronized void add(Entry<IM> entry) {
+            // 再次失败 替换文件中的记录
+            spilled.remove(new Slot(entry));
+            super.add(entry);
+            collect();
+        }
+
+        @Override
+        void overflow(List<Record<IM>> overflow) {
+            write(overflow, true);
+            for (int i = 0; i < overflow.size(); i++) {
+                Record<IM> record = overflow.get(i);
+                spilled.put(new Slot(record), record.time);
+            }
+            evict();
+        }
+
+        /**
+         * 文件中的有效记录超出容量时 淘汰最早写入的记录：仅移出索引，由 collect 批量重写文件
+         */
+        private void evict() {
+            Iterator<Slot> it = spilled.keySet().iterator();
+            while (spilled.size() > fileCapacity) {
+                it.next();
+                it.remove();
+            }
+        }
+
+        @Override
+        public synchronized List<Entry<IM>> entries() {
+            List<Entry<IM>> entries = new ArrayList<Entry<IM>>(live());
+            entries.addAll(records.values());
+            return Collections.unmodifiableList(entries);
+        }
+
+        @Override
+        public synchronized boolean remove(Entry<IM> entry) {
+            if (super.remove(entry)) return true;
+            Slot slot = new Slot(entry);
+            Long time = spilled.get(slot);
+            if (null == time || time != entry.time()) return false;
+            spilled.remove(slot);
+            // 追加移出标记 不重写文件
+            write(Collections.singletonList(new Record<>(entry.material(), entry.index(), REMOVED, "", entry.time())), true);
+            collect();
+            return true;
+        }
+
+        @Override
+        public synchronized int size() {
+            return records.size() + spilled.size();
+        }
+
+        @Override
+        public synchronized void clear() {
+            super.clear();
+            spilled.clear();
+            written = 0;
+            if (file.exists() && !file.delete()) write(Collections.<Record<IM>>emptyList(), false);
+        }
+
+        /**
+         * 文件中的有效记录 按写入顺序
+         */
+        private List<Record<IM>> live() {
+            List<Record<IM>> live = new ArrayList<>(spilled.size());
+            if (spilled.isEmpty()) return live;
+            for (Map.Entry<Slot, Record<IM>> entry : read().entrySet()) {
+                Long time = spilled.get(entry.getKey());
+                // 再次失败的记录在内存中
+                if (null != time && time == entry.getValue().time) live.add(entry.getValue());
+            }
+            return live;
+        }
+
+        /**
+         * 文件中的无效记录多于有效记录时 仅保留有效记录重写文件，重写的开销分摊到每次移出
+         */
+        private void collect() {
+            if (written - spilled.size() <= spilled.size()) return;
+            write(live(), false);
+        }
+
+        /**
+         * 记录：[工序索引][尝试次数][失败时间][失败原因][原料长度][原料]
+         *
+         * @param append 是否追加 false：重写文件
+         */
+        private void write(List<Record<IM>> records, boolean append) {
+            File target = append ? file : new File(file.getPath() + ".tmp");
+            try {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(target, append)));
+                try {
+                    for (int i = 0; i < records.size(); i++) {
+                        Record<IM> record = records.get(i);
+                        String cause = String.valueOf(record.cause);
+                        byte[] data = serializer.serialize(record.material);
+                        out.writeInt(record.index);
+                        out.writeInt(record.attempts);
+                        out.writeLong(record.time);
+                        out.writeUTF(cause.length() > MAX_CAUSE ? cause.substring(0, MAX_CAUSE) : cause);
+                        out.writeInt(data.length);
+                        out.write(data);
+                    }
+                } finally {
+                    out.close();
+                }
+                // 部分平台不能覆盖已存在的文件
+                if (!append && !target.renameTo(file) && (!file.delete() || !target.renameTo(file))) {
+                    throw new IOException("rename failed: " + target);
+                }
+                written = append ? written + records.size() : records.size();
+            } catch (IOException e) {
+                throw new IllegalStateException("dead letter write failed", e);
+            }
+        }
+
+        /**
+         * 读取文件中的记录 遇到不完整的记录即停止，同一记录保留最后写入的，移出标记移除之前的记录
+         *
+         * @return 按写入顺序
+         */
+        private LinkedHashMap<Slot, Record<IM>> read() {
+            LinkedHashMap<Slot, Record<IM>> records = new LinkedHashMap<>();
+            written = 0;
+            if (!file.exists()) return records;
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                try {
+                    while (true) {
+                        int index = in.readInt();
+                        int attempts = in.readInt();
+                        long time = in.readLong();
+                        String cause = in.readUTF();
+                        int length = in.readInt();
+                        if (length < 0) break;
+                        byte[] data = new byte[length];
+                        in.readFully(data);
+                        Record<IM> record = new Record<>(serializer.deserialize(data), index, attempts, cause, time);
+                        Slot slot = new Slot(record);
+                        written++;
+                        records.remove(slot);
+                        if (attempts != REMOVED) records.put(slot, record);
+                    }
+                } catch (EOFException e) {
+                    // 文件结束
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("dead letter read failed", e);
+            }
+            return records;
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package com.looper.core;
+
+import com.looper.interfaces.IDedup;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 常用去重集合：
+ * 1. exact：精确记录所有成功原料，直至清空（默认）。
+ * 2. ttl：精确记录，成功超过保留时间后淘汰，内存随成功速率 × 保留时间；添加及判定时均淘汰已过期的原料，判定不阻塞。
+ * 3. lru：精确记录，超过容量时淘汰最久未判定的原料（CLOCK 近似：判定只置访问位，淘汰时跳过一次有访问位的原料），内存固定。
+ * 4. bloom：布隆过滤器，按容量及误判率分配位数组，内存固定且不保存 key；
+ * 添加数达到容量时换代，保留上一代判定，误判率不随总数增长；不支持移出，失败的原料仍判定为已成功。
+ */
+public class Dedup {
+
+    private Dedup() {
+    }
+
+    /**
+     * 精确去重 不淘汰
+     */
+    public static IDedup exact() {
+        return new Exact();
+    }
+
+    /**
+     * 精确去重 按保留时间淘汰
+     *
+     * @param ttl 保留时间 毫秒
+     */
+    public static IDedup ttl(long ttl) {
+        return new Ttl(ttl);
+    }
+
+    /**
+     * 精确去重 按容量淘汰最久未判定的原料
+     *
+     * @param capacity 容量
+     */
+    public static IDedup lru(int capacity) {
+        return new Lru(capacity);
+    }
+
+    /**
+     * 布隆过滤器去重
+     *
+     * @param capacity 每代容量 添加数达到容量时换代
+     * @param fpp      误判率 0~1
+     */
+    public static IDedup bloom(int capacity, double fpp) {
+        return new Bloom(capacity, fpp);
+    }
+
+    private static class Exact implements IDedup {
+        private final Set<Object> keys = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+
+        @Override
+        public boolean contains(Object key) {
+            return keys.contains(key);
+        }
+
+        @Override
+        public void add(Object key) {
+            keys.add(key);
+        }
+
+        @Override
+        public void remove(Object key) {
+            keys.remove(key);
+        }
+
+        @Override
+        public int size() {
+            return keys.size();
+        }
+
+        @Override
+        public void clear() {
+            keys.clear();
+        }
+    }
+
+    private static class Ttl implements IDedup {
+        // 保留时间 纳秒
+        private final long ttl;
+        // key:原料key value:过期时间 System.nanoTime()
+        private final ConcurrentHashMap<Object, Long> keys = new ConcurrentHashMap<>();
+        // 按添加顺序的过期记录 重新添加或移出的记录在淘汰时跳过
+        private final ArrayDeque<Object[]> expiries = new ArrayDeque<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        // 不晚于最早过期时间 未到时判定不淘汰
+        private volatile long earliest;
+
+        Ttl(long ttl) {
+            this.ttl = TimeUnit.MILLISECONDS.toNanos(Math.max(1, ttl));
+            earliest = System.nanoTime() + this.ttl;
+        }
+
+        @Override
+        public boolean contains(Object key) {
+            long now = System.nanoTime();
+            // 判定不阻塞：已有原料过期且无竞争时 顺带淘汰
+            if (now - earliest >= 0 && lock.tryLock()) {
+                try {
+                    evict(now);
+                } finally {
+                    lock.unlock();
+                }
+            }
+            Long expiry = keys.get(key);
+            return null != expiry && expiry - now > 0;
+        }
+
+        @Override
+        public void add(Object key) {
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                evict(now);
+                Long expiry = now + ttl;
+                keys.put(key, expiry);
+                expiries.add(new Object[]{key, expiry});
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 淘汰已过期的原料 均摊O(1) 需持有锁
+         */
+        private void evict(long now) {
+            Object[] head;
+            while (null != (head = expiries.peek()) && (Long) head[1] - now <= 0) {
+                expiries.poll();
+                keys.remove(head[0], head[1]);
+            }
+            // 队列为空时 之后添加的原料均不早于 now + ttl 过期
+            earliest = null == head ? now + ttl : (Long) head[1];
+        }
+
+        @Override
+        public void remove(Object key) {
+            keys.remove(key);
+        }
+
+        @Override
+        public int size() {
+            long now = System.nanoTime();
+            if (now - earliest >= 0) {
+                lock.lock();
+                try {
+                    evict(now);
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return keys.size();
+        }
+
+        @Override
+        public void clear() {
+            lock.lock();
+            try {
+                keys.clear();
+                expiries.clear();
+                earliest = System.nanoTime() + ttl;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static class Lru implements IDedup {
+        private final int capacity;
+        // 判定用 不加锁
+        private final ConcurrentHashMap<Object, Node> keys = new ConcurrentHashMap<>();
+        // 淘汰顺序 以自身为锁
+        private final LinkedHashMap<Object, Node> order = new LinkedHashMap<>();
+
+        Lru(int capacity) {
+            this.capacity = Math.max(1, capacity);
+        }
+
+        @Override
+        public boolean contains(Object key) {
+            Node node = keys.get(key);
+            if (null == node) return false;
+            // 仅置访问位 不调整顺序；已置位时不再写入
+            if (!node.referenced) node.referenced = true;
+            return true;
+        }
+
+        @Override
+        public void add(Object key) {
+            synchronized (order) {
+                Node node = keys.get(key);
+                if (null != node) {
+                    node.referenced = true;
+                    return;
+                }
+                // 先淘汰 新添加的原料不参与
+                evict(capacity - 1);
+                node = new Node();
+                order.put(key, node);
+                keys.put(key, node);
+            }
+        }
+
+        /**
+         * 淘汰至 limit 个：从最早添加的原料开始，有访问位的清除访问位后跳过一次，需持有锁；
+         * 判定可能并发置位，第二遍起不再跳过
+         */
+        private void evict(int limit) {
+            for (int pass = 0; order.size() > limit; pass++) {
+                Iterator<Map.Entry<Object, Node>> it = order.entrySet().iterator();
+                while (order.size() > limit && it.hasNext()) {
+                    Map.Entry<Object, Node> eldest = it.next();
+                    Node node = eldest.getValue();
+                    if (pass == 0 && node.referenced) {
+                        node.referenced = false;
+                        continue;
+                    }
+                    it.remove();
+                    keys.remove(eldest.getKey());
+                }
+            }
+        }
+
+        @Override
+        public void remove(Object key) {
+            synchronized (order) {
+                order.remove(key);
+                keys.remove(key);
+            }
+        }
+
+        @Override
+        public int size() {
+            return keys.size();
+        }
+
+        @Override
+        public void clear() {
+            synchronized (order) {
+                order.clear();
+                keys.clear();
+            }
+        }
+
+        private static class Node {
+            // 添加或上次淘汰后是否判定过
+            volatile boolean referenced;
+        }
+    }
+
+    private static class Bloom implements IDedup {
+        private final int capacity;
+        // 位数 及哈希函数数
+        private final int bits;
+        private final int hashes;
+        private volatile AtomicLongArray current;
+        private volatile AtomicLongArray previous;
+        // 当前代的添加数 及上一代的添加数
+        private volatile int count;
+        private volatile int previousCount;
+
+        Bloom(int capacity, double fpp) {
+            this.capacity = Math.max(1, capacity);
+            if (!(fpp > 0 && fpp < 1)) fpp = 0.01;
+            // 判定含两代 每代按一半误判率分配：m = -n·ln(p) / ln(2)^2，k = m/n·ln(2)
+            fpp /= 2;
+            long m = (long) Math.ceil(-this.capacity * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+            bits = (int) Math.min(Integer.MAX_VALUE - 63, Math.max(64, m));
+            hashes = Math.max(1, (int) Math.round((double) bits / this.capacity * Math.log(2)));
+            current = new AtomicLongArray((bits + 63) >>> 6);
+        }
+
+        @Override
+        public boolean contains(Object key) {
+            long hash = hash(key);
+            if (contains(current, hash)) return true;
+            AtomicLongArray previous = this.previous;
+            return null != previous && contains(previous, hash);
+        }
+
+        private boolean contains(AtomicLongArray filter, long hash) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashes; i++) {
+                int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bits;
+                if ((filter.get(bit >>> 6) & (1L << bit)) == 0) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public synchronized void add(Object key) {
+            if (count >= capacity) {
+                // 换代：保留上一代判定，丢弃更早的
+                previous = current;
+                previousCount = count;
+                current = new AtomicLongArray((bits + 63) >>> 6);
+                count = 0;
+            }
+            long hash = hash(key);
+            AtomicLongArray filter = current;
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashes; i++) {
+                int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bits;
+                // 添加已加锁 仅需对并发判定可见
+                filter.set(bit >>> 6, filter.get(bit >>> 6) | (1L << bit));
+            }
+            count = count + 1;
+        }
+
+        /**
+         * 不支持移出
+         */
+        @Override
+        public void remove(Object key) {
+        }
+
+        @Override
+        public int size() {
+            return count + previousCount;
+        }
+
+        @Override
+        public synchronized void clear() {
+            current = new AtomicLongArray((bits + 63) >>> 6);
+            previous = null;
+            count = 0;
+            previousCount = 0;
+        }
+
+        /**
+         * 64位混合哈希 高低32位用作双重哈希
+         */
+        private static long hash(Object key) {
+            long h = null == key ? 0 : key.hashCode();
+            h *= 0x9E3779B97F4A7C15L;
+            h ^= h >>> 29;
+            h *= 0xBF58476D1CE4E5B9L;
+            h ^= h >>> 32;
+            return h;
+        }
+    }
+}
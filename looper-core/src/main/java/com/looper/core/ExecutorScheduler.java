@@ -0,0 +1,94 @@
+package com.looper.core;
+
+import com.looper.interfaces.IScheduler;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于 ScheduledExecutorService 的调度器，纯JVM实现：
+ * 单线程执行，与 HandlerThread 一致，任务在同一线程串行执行。
+ * 无延迟调度时，若该任务已有到期未执行的调度则沿用，不重复创建。
+ */
+public class ExecutorScheduler implements IScheduler {
+    public static final Factory FACTORY = new Factory() {
+        @Override
+        public IScheduler create(String name) {
+            return new ExecutorScheduler(name);
+        }
+    };
+
+    private final ScheduledThreadPoolExecutor executor;
+    // key:任务 value:未执行的调度
+    private final Map<Runnable, Entry> pending = new HashMap<>();
+
+    public ExecutorScheduler(final String name) {
+        executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, name);
+            }
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        // 同 quitSafely：释放后不再执行延迟任务
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    @Override
+    public void schedule(Runnable task, long delay) {
+        synchronized (pending) {
+            if (executor.isShutdown()) return;
+            long time = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+            Entry old = pending.get(task);
+            // 已到期的调度与新的无延迟调度等效
+            if (delay <= 0 && null != old && old.time - time <= 0) return;
+            pending.remove(task);
+            if (null != old) old.future.cancel(false);
+            Entry entry = new Entry(task, time);
+            pending.put(task, entry);
+            entry.future = executor.schedule(entry, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void cancel(Runnable task) {
+        synchronized (pending) {
+            Entry old = pending.remove(task);
+            if (null != old) old.future.cancel(false);
+        }
+    }
+
+    @Override
+    public void release() {
+        synchronized (pending) {
+            pending.clear();
+            executor.shutdown();
+        }
+    }
+
+    private class Entry implements Runnable {
+        private final Runnable task;
+        // 执行时间 System.nanoTime()
+        private final long time;
+        private ScheduledFuture<?> future;
+
+        Entry(Runnable task, long time) {
+            this.task = task;
+            this.time = time;
+        }
+
+        @Override
+        public void run() {
+            synchronized (pending) {
+                // 已被替换或移除的调度不执行
+                if (pending.get(task) != this) return;
+                pending.remove(task);
+            }
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,918 @@
+package com.looper.core;
+
+import com.looper.Logger;
+import com.looper.Platform;
+import com.looper.interfaces.ICompletion;
+import com.looper.interfaces.IConcurrencyLimit;
+import com.looper.interfaces.IDeadLetter;
+import com.looper.interfaces.IDedup;
+import com.looper.interfaces.IMaterial;
+import com.looper.interfaces.IMetrics;
+import com.looper.interfaces.IMetricsListener;
+import com.looper.interfaces.IJournal;
+import com.looper.interfaces.IPipe;
+import com.looper.interfaces.IProcedure;
+import com.looper.interfaces.IProcessStatus;
+import com.looper.interfaces.IPromise;
+import com.looper.interfaces.IResultCache;
+import com.looper.interfaces.IRetryPolicy;
+import com.looper.interfaces.IScheduler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 管道流：
+ * 1. 管道中的节点（流水线上的工序）互不影响，并行。
+ * 2. 管道根据节点顺序维护一个节点集合。
+ * 3. 上个节点的处理结果 流转到下个节点充当待处理的原料。
+ * 4. 管道中的原料统一封装格式：IMaterial<M> 包含处理的状态。
+ * 自动轮训管道（流水线）：
+ * 1. 管道中的节点（流水线上的工序）互不影响，并行。
+ * 2. 上个节点将处理结果流转到一下节点并存到原料表中，节点自动轮训处理各自的原料表，直至原料列表为空，回调onComplete接口视为一次处理完成。
+ * 3. 所有节点都处理完成，视为管道处理完成。
+ * 非自动轮训管道（单一通道）：
+ * 1. 向首节点分发下一个原料，依次流转到下一节点，直至流转最后一个节点，再次向首节点分发原料。
+ * 2. 节点处理原料：成功：流转下个节点，失败：该原理处理结束，向首节点分发下一个原料。
+ * 执行后端：
+ * 每个节点由调度器工厂创建的调度器驱动，默认由运行平台决定，也可通过构造指定（如 HandlerScheduler.FACTORY、ExecutorScheduler.FACTORY）。
+ * ForkJoinScheduler.FACTORY：所有管道的节点共享一个按核数创建的线程池，节点不再各占一个线程。
+ * 节点融合（仅自动轮训）：
+ * 融合的节点在上个节点的线程上直接处理流转的结果，不经原料列表及调度；各节点的重试、状态集及 onComplete 照常。
+ * 可手动指定，或按平均处理耗时自动融合耗时低的节点。
+ * 流转：
+ * 结果的流转（forward）及处理完毕的判定（isComplete）可由子类重写，如 DagPipe 按有向无环图流转。
+ * 处理完毕：
+ * 管道以计数记录各节点中的原料数（含接收队列、待重试及处理中），原料进入节点前计入，离开节点时扣除，
+ * 成功的结果先流转下个节点再离开本节点，计数为0即所有原料已离开管道；节点回调 onComplete 时计数为0视为管道处理完毕。
+ * 单个原料的结果：
+ * submit 返回原料的 ICompletion，原料在各节点的流转以 key() 跟踪，原料及其流转的结果均离开管道时完成。
+ *
+ * @param <IM>
+ * @param <M>  原料的类型
+ */
+public abstract class FlowPipe<IM extends IMaterial<M>, M> implements IPipe<IM, M> {
+    protected final String TAG = this.getClass().getSimpleName();
+    private List<IProcedure> procedures = new ArrayList<>(2);
+    /* key:index  value: error total info */
+    private final TreeMap<Integer, IProcessStatus<IM, M>> completeResult = new TreeMap<>();
+    protected int maxProcedure = 1;//最大工序
+    private int maxTry = IProcedure.MAX_TRY;
+    private int delay = 0;
+    private boolean autoLoopNext;
+    private final IScheduler.Factory schedulerFactory;
+    private volatile IJournal<IM> journal;
+    // 死信记录 null：不记录
+    private volatile IDeadLetter<IM> deadLetter;
+    // 管道中的原料数
+    private final AtomicInteger active = new AtomicInteger();
+    // 上次处理完毕后是否添加过原料 避免空闲节点的 onComplete 误判
+    private volatile boolean applied;
+    // 各节点待完成的结果 key:原料key 以各 Map 自身为锁
+    private final List<Map<Object, Ticket<IM>>> tickets;
+    // 是否有待完成的结果 未调用 submit 时不跟踪
+    private volatile boolean tracking;
+    // 当前线程正在流转的原料所属的结果
+    private final ThreadLocal<Ticket<IM>> carrying = new ThreadLocal<>();
+    // 自动融合 每处理 FUSION_SAMPLE 个原料评估一次
+    private static final int FUSION_SAMPLE = 1024;
+    // 各节点上次评估自动融合时的处理数 并行处理时以 CAS 保证每个采样点只评估一次
+    private final AtomicLongArray sampled;
+    // 是否融合到上个节点 写时复制
+    private volatile boolean[] fused;
+    // 自动融合的处理耗时阈值 微秒 0：关闭
+    private volatile long fusionThreshold;
+
+    public FlowPipe(int procedure) {
+        this(procedure, true);
+    }
+
+    /**
+     * 流管道：管道中只能存在一个原料在执行。
+     *
+     * @param procedure    工序数
+     * @param autoLoopNext 自动轮训
+     */
+    public FlowPipe(int procedure, boolean autoLoopNext) {
+        this(procedure, autoLoopNext, Platform.get().schedulerFactory());
+    }
+
+    /**
+     * @param procedure        工序数
+     * @param autoLoopNext     自动轮训
+     * @param schedulerFactory 工序调度器工厂 决定执行后端
+     */
+    public FlowPipe(int procedure, boolean autoLoopNext, IScheduler.Factory schedulerFactory) {
+        if (procedure < 1) procedure = 1;
+        maxProcedure = procedure;
+        this.autoLoopNext = autoLoopNext;
+        this.schedulerFactory = schedulerFactory;
+        this.fused = new boolean[procedure];
+        this.sampled = new AtomicLongArray(procedure);
+        this.tickets = new ArrayList<>(procedure);
+        for (int i = 0; i < procedure; i++) {
+            tickets.add(new HashMap<Object, Ticket<IM>>());
+        }
+        init();
+    }
+
+    private void init() {
+        procedures.clear();
+        Procedurer looper;
+        for (int i = 0; i < maxProcedure; i++) {
+            final int index = i;
+            looper = new Procedurer<IM, M>(i, autoLoopNext, schedulerFactory) {
+                @Override
+                public IM onProcess(IM material) {
+                    return FlowPipe.this.onProcess(index, material);
+                }
+
+                @Override
+                public void onProcessAsync(IM material, IPromise<IM> promise) {
+                    FlowPipe.this.onProcessAsync(index, material, promise);
+                }
+
+                @Override
+                public List<IM> onProcessBatch(List<IM> materials) {
+                    return FlowPipe.this.onProcessBatch(index, materials);
+                }
+
+                @Override
+                protected IM fork(IM result) {
+                    return FlowPipe.this.fork(result);
+                }
+
+                @Override
+                protected void onAfterProcessBatch(List<IM> materials, List<IM> results) {
+                    // 跟踪结果时逐个流转
+                    if (tracking) {
+                        super.onAfterProcessBatch(materials, results);
+                        return;
+                    }
+                    // 批量处理仅自动轮训，成功的结果一次流转向下道工序
+                    List<IM> passed = new ArrayList<>(results.size());
+                    for (int i = 0; i < results.size(); i++) {
+                        IM result = results.get(i);
+                        if (null != result && result.state()) {
+                            passed.add(result);
+                        }
+                    }
+                    if (!passed.isEmpty()) {
+                        forward(index, passed);
+                    }
+                }
+
+                @Override
+                protected void onAfterProcess(IM material, IM result) {
+                    // 成功或达最大尝试次数 原料离开本工序
+                    boolean settled = result.state() || material.getCount() >= maxTry;
+                    Ticket<IM> ticket = settled && tracking ? take(index, material) : null;
+                    if (result.state()) {
+                        //流转向下道工序
+                        forward(index, result, ticket);
+                    }
+                    complete(ticket, result, index, material.getCount());
+                    adaptFusion(index);
+                    // 自动轮训 不需管道分发next原料；
+                    // 非自动轮训 在工序流转异常时 需手动向管道分发next原料。
+                    if (!autoLoopNext) {
+                        //后分发next原料
+                        // 1. 处理出错且达最大尝试次数， 出错未达到最大尝试测试，在节点内部出里
+                        // 2. 最后一节点 成功 或 出错且达最大尝试次数
+                        if ((index == maxProcedure - 1 && (result.state() || material.getCount() >= maxTry))
+                                || (!result.state() && material.getCount() >= maxTry)) {
+                            IMaterial m = getProcedure(0).next();
+                            // fix 问题：首个节点 出里出错，再次looper next 导致execute为空，会再次回调onComplete
+                            if (getProcedure(0).count() > 0) {
+                                getProcedure(0).loopNext(delay);
+                            }
+                        }
+                    }
+                }
+
+                @Override
+                protected void onEnter(int count) {
+                    active.addAndGet(count);
+                    applied = true;
+                }
+
+                @Override
+                protected void onLeave(int count) {
+                    active.addAndGet(-count);
+                }
+
+                @Override
+                protected void onError(IM material, String cause) {
+                    IDeadLetter<IM> deadLetter = FlowPipe.this.deadLetter;
+                    if (null != deadLetter) {
+                        deadLetter.add(DeadLetter.entry(material, index, material.getCount(), cause));
+                    }
+                }
+
+                @Override
+                protected void onDiscard(IM material) {
+                    if (tracking) complete(take(index, material), null, index, material.getCount());
+                }
+
+                @Override
+                public void clear() {
+                    super.clear();
+                    if (tracking) releaseAll(index);
+                }
+
+                @Override
+                public void onComplete() {
+                    FlowPipe.this.onComplete(index);
+                    // 融合的下个节点不经轮训，随本节点处理完毕检查是否处理完毕
+                    if (!autoLoopNext) return;
+                    int[] successors = successors(index);
+                    for (int i = 0; i < successors.length; i++) {
+                        IProcedure next = FlowPipe.this.getProcedure(successors[i]);
+                        if (isFused(successors[i]) && null != next) {
+                            next.loopNext(0);
+                        }
+                    }
+                }
+            };
+            looper.setMaxTry(maxTry);
+            procedures.add(looper);
+        }
+    }
+
+    @Override
+    public void setMaxTry(int maxTry) {
+        this.maxTry = maxTry;
+        for (int i = 0; i < maxProcedure; i++) {
+            IProcedure looper = procedures.get(i);
+            looper.setMaxTry(maxTry);
+        }
+    }
+
+    @Override
+    public void setDelay(int delay) {
+        this.delay = delay;
+        for (int i = 0; i < maxProcedure; i++) {
+            IProcedure looper = procedures.get(i);
+            looper.setDelay(delay);
+        }
+    }
+
+    @Override
+    public void setRetryPolicy(IRetryPolicy policy) {
+        for (int i = 0; i < maxProcedure; i++) {
+            IProcedure looper = procedures.get(i);
+            looper.setRetryPolicy(policy);
+        }
+    }
+
+    @Override
+    public void setRetryPolicy(int index, IRetryPolicy policy) {
+        IProcedure procedure = getProcedure(index);
+        if (null != procedure) {
+            procedure.setRetryPolicy(policy);
+        }
+    }
+
+    @Override
+    public int setJournal(IJournal<IM> journal) {
+        this.journal = journal;
+        int count = 0;
+        for (int i = 0; i < maxProcedure; i++) {
+            int recovered = procedures.get(i).setJournal(journal);
+            if (recovered > 0) {
+                markApplied(i);
+                count += recovered;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public IMetrics getMetrics(int index) {
+        IProcedure procedure = getProcedure(index);
+        return null == procedure ? null : procedure.getMetrics();
+    }
+
+    @Override
+    public void setDeadLetter(IDeadLetter<IM> deadLetter) {
+        this.deadLetter = deadLetter;
+    }
+
+    @Override
+    public IDeadLetter<IM> getDeadLetter() {
+        return deadLetter;
+    }
+
+    @Override
+    public int replay(List<IDeadLetter.Entry<IM>> entries) {
+        IDeadLetter<IM> deadLetter = this.deadLetter;
+        int count = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            IDeadLetter.Entry<IM> entry = entries.get(i);
+            IM material = entry.material();
+            // 重新计算尝试次数
+            material.setCount(0);
+            if (deliver(entry.index(), material) == 0) continue;
+            count++;
+            // 添加后再次失败的记录失败时间不同 不会被移出
+            if (null != deadLetter) deadLetter.remove(entry);
+        }
+        return count;
+    }
+
+    @Override
+    public void setMetricsListener(IMetricsListener listener, long interval) {
+        for (int i = 0; i < maxProcedure; i++) {
+            IProcedure looper = procedures.get(i);
+            looper.setMetricsListener(listener, interval);
+        }
+    }
+
+    @Override
+    public int apply(Object obj) {
+        if (obj instanceof IMaterial) {
+            return deliver(0, (IM) obj);
+        }
+        IProcedure first = getProcedure(0);
+        int count = 0;
+        if (null != obj && null != first) {
+            count = first.apply(obj);
+            if (count > 0) {
+                markApplied(0);
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public ICompletion<IM> submit(IM material) {
+        Completion<IM> completion = new Completion<>();
+        tracking = true;
+        Ticket<IM> previous = carrying.get();
+        carrying.set(new Ticket<>(completion, null));
+        // 添加期间暂计：结果已登记而原料尚未进入节点时，管道不会判定为处理完毕而释放登记的结果
+        enter();
+        try {
+            apply(material);
+        } finally {
+            leave();
+            carrying.set(previous);
+        }
+        // 未添加到任何节点时 立即完成
+        completion.release();
+        return completion;
+    }
+
+    /**
+     * 管道中的原料数：各节点待处理、待重试及处理中的原料，为0时所有原料已离开管道
+     */
+    public int active() {
+        return active.get();
+    }
+
+    /**
+     * 暂计一个原料，如添加到多个节点期间避免先添加的原料处理完时误判管道处理完毕；需与 leave 成对调用
+     */
+    protected final void enter() {
+        // 与 onComplete 的判定及清空互斥：判定处理完毕后、清空前暂计的原料不会被清空
+        synchronized (completeResult) {
+            active.incrementAndGet();
+            applied = true;
+        }
+    }
+
+    protected final void leave() {
+        active.decrementAndGet();
+    }
+
+    @Override
+    public void setConcurrency(int index, int concurrency) {
+        IProcedure procedure = getProcedure(index);
+        if (null != procedure) {
+            procedure.setConcurrency(concurrency);
+        }
+    }
+
+    @Override
+    public void setAdaptiveConcurrency(int index, IConcurrencyLimit limit) {
+        IProcedure procedure = getProcedure(index);
+        if (null != procedure) {
+            procedure.setAdaptiveConcurrency(limit);
+        }
+    }
+
+    @Override
+    public void setBatch(int index, int size, long timeout) {
+        IProcedure procedure = getProcedure(index);
+        if (null != procedure) {
+            procedure.setBatch(size, timeout);
+        }
+    }
+
+    @Override
+    public void setTimeout(int index, long timeout) {
+        IProcedure procedure = getProcedure(index);
+        if (null != procedure) {
+            procedure.setTimeout(timeout);
+        }
+    }
+
+    @Override
+    public void setRateLimit(int index, double permitsPerSecond, int burst) {
+        IProcedure procedure = getProcedure(index);
+        if (null != procedure) {
+            procedure.setRateLimit(permitsPerSecond, burst);
+        }
+    }
+
+    @Override
+    public void setAsync(int index, int maxOutstanding) {
+        IProcedure procedure = getProcedure(index);
+        if (null != procedure) {
+            procedure.setAsync(maxOutstanding);
+        }
+    }
+
+    @Override
+    public void setCircuitBreaker(int index, double failureRate, int window, long openTime) {
+        IProcedure procedure = getProcedure(index);
+        if (null != procedure) {
+            procedure.setCircuitBreaker(failureRate, window, openTime);
+        }
+    }
+
+    @Override
+    public void setDedup(int index, IDedup dedup) {
+        IProcedure procedure = getProcedure(index);
+        if (null != procedure) {
+            procedure.setDedup(dedup);
+        }
+    }
+
+    @Override
+    public void setResultCache(int index, IResultCache<IM> cache) {
+        IProcedure procedure = getProcedure(index);
+        if (null != procedure) {
+            procedure.setResultCache(cache);
+        }
+    }
+
+    @Override
+    public void setAging(int index, long aging) {
+        IProcedure procedure = getProcedure(index);
+        if (null != procedure) {
+            procedure.setAging(aging);
+        }
+    }
+
+    @Override
+    public void setPartitions(int index, int partitions) {
+        IProcedure procedure = getProcedure(index);
+        if (null != procedure) {
+            procedure.setPartitions(partitions);
+        }
+    }
+
+    @Override
+    public void setFusion(int index, boolean fused) {
+        if (index < 1 || index >= maxProcedure) return;
+        synchronized (this) {
+            boolean[] copy = this.fused.clone();
+            copy[index] = fused;
+            this.fused = copy;
+        }
+    }
+
+    @Override
+    public void setAutoFusion(long threshold) {
+        fusionThreshold = threshold < 0 ? 0 : threshold;
+    }
+
+    private boolean isFused(int index) {
+        boolean[] fused = this.fused;
+        return index > 0 && index < fused.length && fused[index];
+    }
+
+    /**
+     * 自动融合：按节点的平均处理耗时 调整是否融合到上个节点
+     */
+    private void adaptFusion(int index) {
+        long threshold = fusionThreshold;
+        if (threshold <= 0 || index < 1) return;
+        IMetrics metrics = getProcedure(index).getMetrics();
+        long processed = metrics.processed();
+        long last = sampled.get(index);
+        if (processed - last < FUSION_SAMPLE || !sampled.compareAndSet(index, last, processed)) return;
+        boolean fast = metrics.serviceTime().mean() <= threshold;
+        if (fast != isFused(index)) {
+            setFusion(index, fast);
+            Logger.e(TAG, " fusion index %s :%s", index, fast);
+        }
+    }
+
+    @Override
+    public void setCapacity(int index, int capacity, IProcedure.Overflow overflow) {
+        IProcedure procedure = getProcedure(index);
+        if (null != procedure) {
+            procedure.setCapacity(capacity, overflow);
+        }
+    }
+
+    /**
+     * 成功的结果流转到下个节点，默认流转到 index + 1
+     *
+     * @param index 当前节点索引
+     */
+    protected void forward(int index, IM result) {
+        deliver(index + 1, result);
+    }
+
+    /**
+     * 批量处理成功的结果流转到下个节点，默认以一次 apply(List) 流转到 index + 1
+     *
+     * @param index 当前节点索引
+     */
+    protected void forward(int index, List<IM> results) {
+        IProcedure next = getProcedure(index + 1);
+        if (null == next) return;
+        int count = 0;
+        if (isFused(index + 1)) {
+            for (int i = 0; i < results.size(); i++) {
+                count += next.applyInline(results.get(i));
+            }
+        } else {
+            count = next.apply(results);
+        }
+        // 移出状态集
+        if (count > 0) {
+            markApplied(index + 1);
+        }
+    }
+
+    /**
+     * 向节点添加原料：融合的节点直接处理，并记录流转节点
+     *
+     * @param index 节点索引
+     * @return 添加的记录数
+     */
+    protected final int deliver(int index, IM material) {
+        IProcedure next = getProcedure(index);
+        if (null == next) return 0;
+        // 先登记结果 融合的节点在添加时即处理完毕
+        Ticket<IM> carried = tracking ? carrying.get() : null;
+        if (null != carried) attach(index, material, carried);
+        int count = isFused(index) ? next.applyInline(material) : next.apply(material);
+        // 移出状态集
+        if (count > 0) {
+            markApplied(index);
+        } else if (null != carried) {
+            detach(index, material, carried);
+        }
+        return count;
+    }
+
+    /**
+     * 流转成功的结果，流转期间当前线程携带原料所属的结果
+     */
+    private void forward(int index, IM result, Ticket<IM> ticket) {
+        if (null == ticket) {
+            forward(index, result);
+            return;
+        }
+        Ticket<IM> previous = carrying.get();
+        carrying.set(ticket);
+        try {
+            forward(index, result);
+        } finally {
+            carrying.set(previous);
+        }
+    }
+
+    /**
+     * 登记原料在节点待完成的结果，同一原料重复添加时合并
+     */
+    private void attach(int index, IM material, Ticket<IM> carried) {
+        Map<Object, Ticket<IM>> map = tickets.get(index);
+        Object key = material.key();
+        synchronized (map) {
+            for (Ticket<IM> t = carried; null != t; t = t.next) {
+                t.completion.retain();
+                t.forwarded++;
+                map.put(key, new Ticket<>(t.completion, map.get(key)));
+            }
+        }
+    }
+
+    /**
+     * 原料未添加到节点 移出登记的结果
+     */
+    private void detach(int index, IM material, Ticket<IM> carried) {
+        Map<Object, Ticket<IM>> map = tickets.get(index);
+        Object key = material.key();
+        List<Completion<IM>> removed = new ArrayList<>(1);
+        synchronized (map) {
+            for (Ticket<IM> t = carried; null != t; t = t.next) {
+                Ticket<IM> head = map.get(key);
+                Ticket<IM> prev = null;
+                for (Ticket<IM> node = head; null != node; prev = node, node = node.next) {
+                    if (node.completion != t.completion) continue;
+                    t.forwarded--;
+                    if (null == prev) head = node.next;
+                    else prev.next = node.next;
+                    removed.add(node.completion);
+                    break;
+                }
+                if (null == head) map.remove(key);
+                else map.put(key, head);
+            }
+        }
+        for (int i = 0; i < removed.size(); i++) {
+            removed.get(i).release(null, index, material.getCount());
+        }
+    }
+
+    /**
+     * 暂存结果（如汇合节点等待其他分支的结果）：当前携带的结果各增加一个未完成分支，
+     * 原料离开节点时不再记录为结果，由 resume 或 drop 结束
+     *
+     * @return 携带的结果 null：未跟踪
+     */
+    Ticket<IM> hold() {
+        Ticket<IM> carried = tracking ? carrying.get() : null;
+        for (Ticket<IM> t = carried; null != t; t = t.next) {
+            t.completion.retain();
+            t.forwarded++;
+        }
+        return carried;
+    }
+
+    /**
+     * 暂存的结果随原料添加到节点，结束暂存
+     *
+     * @param held hold 返回的结果 可包含null
+     * @return 添加的记录数
+     */
+    int resume(int index, IM material, List<Ticket<IM>> held) {
+        // 合并为一个结果链 同一结果只登记一次
+        Ticket<IM> chain = null;
+        for (int i = 0; i < held.size(); i++) {
+            for (Ticket<IM> t = held.get(i); null != t; t = t.next) {
+                boolean contains = false;
+                for (Ticket<IM> c = chain; null != c && !contains; c = c.next) {
+                    contains = c.completion == t.completion;
+                }
+                if (!contains) chain = new Ticket<>(t.completion, chain);
+            }
+        }
+        Ticket<IM> previous = carrying.get();
+        carrying.set(chain);
+        try {
+            return deliver(index, material);
+        } finally {
+            carrying.set(previous);
+            for (int i = 0; i < held.size(); i++) {
+                for (Ticket<IM> t = held.get(i); null != t; t = t.next) {
+                    t.completion.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * 暂存的结果不再流转 按失败结束
+     *
+     * @param held hold 返回的结果 可包含null
+     */
+    void drop(int index, List<Ticket<IM>> held) {
+        for (int i = 0; i < held.size(); i++) {
+            for (Ticket<IM> t = held.get(i); null != t; t = t.next) {
+                t.completion.release(null, index, 0);
+            }
+        }
+    }
+
+    /**
+     * 原料离开节点 取出登记的结果
+     */
+    private Ticket<IM> take(int index, IM material) {
+        Map<Object, Ticket<IM>> map = tickets.get(index);
+        synchronized (map) {
+            return map.remove(material.key());
+        }
+    }
+
+    /**
+     * 原料离开节点：未流转到其他节点时记录为结果，否则结果由后续节点记录
+     */
+    private void complete(Ticket<IM> ticket, IM result, int index, int attempts) {
+        for (Ticket<IM> t = ticket; null != t; t = t.next) {
+            if (t.forwarded > 0) {
+                t.completion.release();
+            } else {
+                t.completion.release(result, index, attempts);
+            }
+        }
+    }
+
+    /**
+     * 节点清空 完成所有登记的结果
+     */
+    private void releaseAll(int index) {
+        Map<Object, Ticket<IM>> map = tickets.get(index);
+        List<Ticket<IM>> all;
+        synchronized (map) {
+            all = new ArrayList<>(map.values());
+            map.clear();
+        }
+        for (int i = 0; i < all.size(); i++) {
+            complete(all.get(i), null, index, 0);
+        }
+    }
+
+    /**
+     * 节点的结果可能流转到的节点，用于检查融合节点是否处理完毕
+     *
+     * @param index 节点索引
+     */
+    protected int[] successors(int index) {
+        return index + 1 < maxProcedure ? new int[]{index + 1} : new int[0];
+    }
+
+    /**
+     * 复制原料：结果缓存保存及流转副本，DagPipe 广播到多个节点时为后续节点复制，使尝试次数分别计数
+     * 默认复制 Material（不含尝试次数），其他实现原样返回，需分别流转的重写
+     */
+    protected IM fork(IM result) {
+        return Procedurer.copy(result);
+    }
+
+    /**
+     * 所有节点是否处理完毕，节点回调 onComplete 时持有状态集锁调用
+     * 默认：管道中的原料数为0
+     */
+    protected boolean isComplete() {
+        return active.get() == 0;
+    }
+
+    /**
+     * 节点添加了原料，移出其状态集
+     * 工序可能并行处理，状态集的访问以 completeResult 为锁
+     */
+    protected final void markApplied(int index) {
+        synchronized (completeResult) {
+            completeResult.remove(index);
+        }
+    }
+
+    @Override
+    public void pause() {
+        for (int i = 0; i < maxProcedure; i++) {
+            IProcedure looper = procedures.get(i);
+            looper.pauseLoop();
+        }
+    }
+
+    @Override
+    public void resume() {
+        for (int i = 0; i < maxProcedure; i++) {
+            IProcedure looper = procedures.get(i);
+            looper.resumeLoop();
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < maxProcedure; i++) {
+            IProcedure looper = procedures.get(i);
+            looper.clear();
+        }
+        // 所有工序已清空 丢弃日志
+        IJournal<IM> journal = this.journal;
+        if (null != journal) {
+            journal.reset();
+        }
+    }
+
+    @Override
+    public void release() {
+        for (int i = 0; i < maxProcedure; i++) {
+            IProcedure looper = procedures.get(i);
+            looper.release();
+        }
+        procedures.clear();
+        if (null != journal) {
+            journal.close();
+            journal = null;
+        }
+    }
+
+    @Override
+    public IProcedure getProcedure(int index) {
+        if (index > -1 && index < maxProcedure) {
+            return procedures.get(index);
+        }
+        return null;
+    }
+
+    @Override
+    public void onComplete(int index) {
+        IProcessStatus<IM, M> status = getProcedure(index).getProcessStatus();
+        synchronized (completeResult) {
+            completeResult.put(index, status);
+            if (Logger.isDebug()) {
+                Logger.e(TAG, " onComplete ：index " + index + " active " + active.get() + " current = " + completeResult.size());
+            }
+            // 以管道中的原料数判定，而非回调 onComplete 的节点数：
+            // 节点空闲时其他节点可能仍在处理，流转来的原料会再次添加到已回调的节点。
+            if (applied) {
+                // 先复位再判定：判定期间添加的原料会再次置位
+                applied = false;
+                if (isComplete()) {
+                    showResult();
+                    clear();
+                } else {
+                    applied = true;
+                }
+            }
+        }
+    }
+
+    public void showResult() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(" \n");
+        for (Map.Entry<Integer, IProcessStatus<IM, M>> entry : completeResult.entrySet()) {
+            builder.append("onComplete: index = ");
+            builder.append(entry.getKey() + " ");
+            builder.append(entry.getValue());
+            builder.append("\n");
+        }
+        Logger.e(TAG, builder.toString());
+    }
+
+    /**
+     * 节点登记的待完成结果 同一原料的多个结果链接
+     */
+    static class Ticket<IM extends IMaterial> {
+        private final Completion<IM> completion;
+        private Ticket<IM> next;
+        // 流转到的节点数 仅流转的线程访问
+        private int forwarded;
+
+        Ticket(Completion<IM> completion, Ticket<IM> next) {
+            this.completion = completion;
+            this.next = next;
+        }
+    }
+
+    /**
+     * 当前处理是否已超时取消，供 onProcess 检查后提前返回
+     *
+     * @see IProcedure#setTimeout(long)
+     */
+    protected final boolean isCancelled() {
+        return Procedurer.isCancelled();
+    }
+
+    /**
+     * 处理原料，并封装成下一道工序的原料
+     *
+     * @param index    索引
+     * @param material 当前工序待处理原料
+     * @return 下一个工序的处理的原料
+     */
+    @Override
+    public abstract IM onProcess(int index, IM material);
+
+    /**
+     * 异步处理原料 默认同步回调 onProcess 后完成，需异步处理的工序重写
+     *
+     * @param index    索引
+     * @param material 当前工序待处理原料
+     * @param promise  处理结果 完成时传入下一个工序的处理的原料
+     */
+    @Override
+    public void onProcessAsync(int index, IM material, IPromise<IM> promise) {
+        promise.complete(onProcess(index, material));
+    }
+
+    /**
+     * 批量处理原料 默认逐个回调 onProcess，需批量处理的工序重写
+     *
+     * @param index     索引
+     * @param materials 当前工序待处理原料列表
+     * @return 与原料列表一一对应的处理结果
+     */
+    @Override
+    public List<IM> onProcessBatch(int index, List<IM> materials) {
+        List<IM> results = new ArrayList<>(materials.size());
+        for (int i = 0; i < materials.size(); i++) {
+            results.add(onProcess(index, materials.get(i)));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,210 @@
+package com.looper.core;
+
+import com.looper.Logger;
+import com.looper.interfaces.IScheduler;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 共享线程池的调度器：
+ * 1. 所有工序（可跨管道）共享一个工作窃取线程池，线程数随核数而非工序数增长，每个工序只是池上的一个逻辑队列。
+ * 2. 同一工序的任务按到期顺序串行执行，与 HandlerThread 一致；连续执行 BURST 个任务后让出线程，避免繁忙工序独占。
+ * 3. 延迟调度由一个共享的计时线程到期后投递到线程池，计时线程不执行任务。
+ * 4. 工序的并行工作循环同样在共享线程池执行（workers），并行数仍由工序限制。
+ * 工序处理中的阻塞（如容量已满阻塞添加方）通过 ForkJoinPool.managedBlock 补偿线程，避免线程池饿死。
+ */
+public class ForkJoinScheduler implements IScheduler {
+    private static final String TAG = "ForkJoinScheduler";
+    // 连续执行的任务数
+    private static final int BURST = 64;
+
+    /**
+     * 进程内共享的默认线程池 线程数为核数
+     */
+    public static final Factory FACTORY = new Pool(Runtime.getRuntime().availableProcessors());
+
+    private final String name;
+    private final Pool pool;
+    // 待执行的任务 按到期顺序
+    private final ArrayDeque<Entry> ready = new ArrayDeque<>();
+    // key:任务 value:未执行的调度
+    private final Map<Runnable, Entry> pending = new HashMap<>();
+    // 已投递到线程池 或正在执行
+    private boolean running;
+    private boolean released;
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    ForkJoinScheduler(String name, Pool pool) {
+        this.name = name;
+        this.pool = pool;
+    }
+
+    /**
+     * 创建独立线程池的调度器工厂，由该工厂创建的工序共享此线程池
+     *
+     * @param parallelism 线程数
+     */
+    public static Factory factory(int parallelism) {
+        return new Pool(parallelism);
+    }
+
+    @Override
+    public void schedule(Runnable task, long delay) {
+        synchronized (pending) {
+            if (released) return;
+            long time = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+            Entry old = pending.get(task);
+            // 已到期的调度与新的无延迟调度等效
+            if (delay <= 0 && null != old && old.time - time <= 0) return;
+            if (null != old && null != old.future) old.future.cancel(false);
+            final Entry entry = new Entry(task, time);
+            pending.put(task, entry);
+            if (delay <= 0) {
+                enqueue(entry);
+            } else {
+                entry.future = pool.timer.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (pending) {
+                            if (pending.get(entry.task) == entry) enqueue(entry);
+                        }
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    @Override
+    public void cancel(Runnable task) {
+        synchronized (pending) {
+            // 已入队的调度在执行时按 pending 校验 跳过
+            Entry old = pending.remove(task);
+            if (null != old && null != old.future) old.future.cancel(false);
+        }
+    }
+
+    @Override
+    public void release() {
+        synchronized (pending) {
+            released = true;
+            for (Entry entry : pending.values()) {
+                if (null != entry.future) entry.future.cancel(false);
+            }
+            pending.clear();
+            ready.clear();
+        }
+    }
+
+    @Override
+    public Executor workers() {
+        return pool.executor;
+    }
+
+    /**
+     * 加入待执行队列 需持有 pending 锁
+     */
+    private void enqueue(Entry entry) {
+        ready.add(entry);
+        if (!running) {
+            running = true;
+            pool.executor.execute(drainTask);
+        }
+    }
+
+    /**
+     * 串行执行待执行的任务 至多 BURST 个后重新投递
+     */
+    private void drain() {
+        for (int i = 0; i < BURST; i++) {
+            Entry entry;
+            synchronized (pending) {
+                entry = ready.poll();
+                if (null == entry) {
+                    running = false;
+                    return;
+                }
+                // 已被替换或移除的调度不执行
+                if (pending.get(entry.task) != entry) continue;
+                pending.remove(entry.task);
+            }
+            try {
+                entry.task.run();
+            } catch (RuntimeException e) {
+                Logger.e(TAG, " %s run :%s", name, e);
+            }
+        }
+        synchronized (pending) {
+            if (ready.isEmpty()) {
+                running = false;
+                return;
+            }
+        }
+        pool.executor.execute(drainTask);
+    }
+
+    private static class Entry {
+        private final Runnable task;
+        // 执行时间 System.nanoTime()
+        private final long time;
+        private ScheduledFuture<?> future;
+
+        Entry(Runnable task, long time) {
+            this.task = task;
+            this.time = time;
+        }
+    }
+
+    /**
+     * 共享的工作线程池及计时线程
+     */
+    static class Pool implements Factory {
+        private final ForkJoinPool executor;
+        private final ScheduledThreadPoolExecutor timer;
+
+        Pool(int parallelism) {
+            // 异步模式：投递的任务先进先出
+            executor = new ForkJoinPool(Math.max(1, parallelism), new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                    ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                    thread.setName(TAG + "-" + count.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }, null, true);
+            timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, TAG + "-timer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            timer.setRemoveOnCancelPolicy(true);
+            timer.setKeepAliveTime(60, TimeUnit.SECONDS);
+            timer.allowCoreThreadTimeOut(true);
+        }
+
+        @Override
+        public IScheduler create(String name) {
+            return new ForkJoinScheduler(name, this);
+        }
+    }
+}
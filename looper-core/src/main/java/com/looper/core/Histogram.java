@@ -0,0 +1,118 @@
+package com.looper.core;
+
+import com.looper.interfaces.IHistogram;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 无锁耗时分布：按数量级分桶，每个数量级再分 SUB 个子桶，记录为一次原子自增，不分配对象。
+ * 小于 SUB 的值精确记录，其余相对误差不超过 1/SUB；均值按桶中值估算。
+ */
+public class Histogram implements IHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param value 耗时 微秒，负值按0记录
+     */
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts.incrementAndGet(index(value));
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) break;
+        }
+    }
+
+    @Override
+    public long count() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    @Override
+    public long percentile(double percentile) {
+        long count = count();
+        if (count == 0) return 0;
+        long target = (long) Math.ceil(Math.min(1, Math.max(0, percentile)) * count);
+        if (target < 1) target = 1;
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(upper(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    @Override
+    public long max() {
+        return max.get();
+    }
+
+    @Override
+    public double mean() {
+        long count = 0;
+        double sum = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            long n = counts.get(i);
+            if (n == 0) continue;
+            count += n;
+            sum += n * ((double) lower(i) + upper(i)) / 2;
+        }
+        return count == 0 ? 0 : sum / count;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        max.set(0);
+    }
+
+    private static int index(long value) {
+        if (value < SUB) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB - 1);
+        return (exponent - SUB_BITS + 1) * SUB + sub;
+    }
+
+    /**
+     * 桶内最小值
+     */
+    private static long lower(int index) {
+        if (index < SUB) return index;
+        int shift = index / SUB - 1;
+        return (long) (SUB + index % SUB) << shift;
+    }
+
+    /**
+     * 桶内最大值
+     */
+    private static long upper(int index) {
+        if (index < SUB) return index;
+        int shift = index / SUB - 1;
+        long upper = lower(index) + (1L << shift) - 1;
+        return upper < 0 ? Long.MAX_VALUE : upper;
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "count:" + count() +
+                ", p50:" + percentile(0.5) +
+                ", p99:" + percentile(0.99) +
+                ", p999:" + percentile(0.999) +
+                ", max:" + max() +
+                '}';
+    }
+}
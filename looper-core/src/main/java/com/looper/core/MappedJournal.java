@@ -0,0 +1,373 @@
+package com.looper.core;
+
+import com.looper.Logger;
+import com.looper.interfaces.IJournal;
+import com.looper.interfaces.IMaterial;
+import com.looper.interfaces.IMaterialSerializer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * 基于内存映射文件的预写日志：
+ * 1. 只追加写入映射内存，进程被杀时已写入的记录由系统页缓存落盘，不丢失。
+ * 2. 组提交：写入不刷盘，刷盘线程按间隔将间隔内的所有记录一次 force 到磁盘，应对系统掉电。
+ * 3. 打开时回放日志得到各工序的待处理原料，并压缩为仅含待处理原料的新日志；回放遇到不完整或校验失败的记录即停止。
+ * 4. 所有工序清空时（reset）递增纪元，之前纪元的记录视为无效，之后从文件头重新写入。
+ * 5. 运行中写入位置超过压缩阈值时，映射下个窗口前同样回放并压缩，阈值随压缩后的大小增长，避免待处理原料较多时反复压缩。
+ * 文件格式：[魔数][纪元] 记录*；记录：[数据长度][CRC32][纪元][类型][工序索引][数据]
+ *
+ * @param <IM> IMaterial
+ */
+public class MappedJournal<IM extends IMaterial> implements IJournal<IM> {
+    private static final String TAG = "MappedJournal";
+    private static final int MAGIC = 0x4C4F4F50;
+    // 文件头：魔数 纪元
+    private static final int FILE_HEADER = 8;
+    // 记录头：数据长度 CRC32 纪元 类型 工序索引
+    private static final int HEADER = 17;
+    // 映射窗口大小
+    private static final int CHUNK = 4 << 20;
+    // 默认刷盘间隔 毫秒
+    public static final long SYNC_INTERVAL = 100;
+    // 默认压缩阈值 字节
+    public static final long COMPACT_SIZE = 64L << 20;
+
+    private static final byte APPLY = 1;
+    private static final byte FINISH = 2;
+    private static final byte CLEAR = 3;
+
+    private final File file;
+    private final IMaterialSerializer<IM> serializer;
+    private final CRC32 crc = new CRC32();
+    // 回放得到的各工序待处理原料
+    private final Map<Integer, List<IM>> recovered = new HashMap<>();
+    private final long syncInterval;
+    private final long compactSize;
+    // 写入位置超过时压缩
+    private long threshold;
+    private ScheduledThreadPoolExecutor flusher;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    // 当前映射窗口 及其在文件中的偏移
+    private MappedByteBuffer buffer;
+    private long base;
+    private int epoch;
+    private volatile boolean dirty;
+    private boolean closed;
+
+    public MappedJournal(File file, IMaterialSerializer<IM> serializer) throws IOException {
+        this(file, serializer, SYNC_INTERVAL);
+    }
+
+    /**
+     * @param file         日志文件 不存在时创建
+     * @param serializer   原料序列化
+     * @param syncInterval 刷盘间隔 毫秒，小于等于0：每条记录写入后刷盘
+     */
+    public MappedJournal(File file, IMaterialSerializer<IM> serializer, long syncInterval) throws IOException {
+        this(file, serializer, syncInterval, COMPACT_SIZE);
+    }
+
+    /**
+     * @param file         日志文件 不存在时创建
+     * @param serializer   原料序列化
+     * @param syncInterval 刷盘间隔 毫秒，小于等于0：每条记录写入后刷盘
+     * @param compactSize  运行中压缩的阈值 字节，小于等于0：仅打开时压缩
+     */
+    public MappedJournal(File file, IMaterialSerializer<IM> serializer, long syncInterval, long compactSize) throws IOException {
+        this.file = file;
+        this.serializer = serializer;
+        this.syncInterval = syncInterval;
+        this.compactSize = compactSize;
+        Map<Integer, LinkedHashMap<Object, IM>> pending = replay();
+        compact(pending);
+        for (Map.Entry<Integer, LinkedHashMap<Object, IM>> entry : pending.entrySet()) {
+            recovered.put(entry.getKey(), new ArrayList<>(entry.getValue().values()));
+        }
+        open(CHUNK);
+        if (syncInterval > 0) {
+            flusher = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, TAG);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            flusher.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    sync();
+                }
+            }, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void apply(int index, IM material) {
+        append(APPLY, index, serializer.serialize(material));
+    }
+
+    @Override
+    public void finish(int index, IM material) {
+        append(FINISH, index, serializer.serialize(material));
+    }
+
+    @Override
+    public void clear(int index) {
+        append(CLEAR, index, new byte[0]);
+    }
+
+    @Override
+    public synchronized void reset() {
+        if (closed) return;
+        epoch++;
+        try {
+            if (base != 0) {
+                buffer.force();
+                map(0, CHUNK);
+            }
+            buffer.position(0);
+            buffer.putInt(MAGIC);
+            buffer.putInt(epoch);
+        } catch (IOException e) {
+            throw new IllegalStateException("journal reset failed", e);
+        }
+        commit();
+    }
+
+    @Override
+    public List<IM> recover(int index) {
+        synchronized (recovered) {
+            List<IM> ms = recovered.remove(index);
+            return null == ms ? Collections.<IM>emptyList() : ms;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (null != flusher) {
+            flusher.shutdown();
+        }
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            buffer.force();
+            try {
+                channel.close();
+                raf.close();
+            } catch (IOException e) {
+                Logger.e(TAG, " close :%s", e);
+            }
+        }
+    }
+
+    /**
+     * 刷盘 组提交间隔内的所有记录
+     */
+    public void sync() {
+        if (!dirty) return;
+        MappedByteBuffer buffer;
+        synchronized (this) {
+            if (closed) return;
+            dirty = false;
+            buffer = this.buffer;
+        }
+        // 不持锁刷盘 不阻塞写入
+        buffer.force();
+    }
+
+    private synchronized void append(byte type, int index, byte[] data) {
+        if (closed) return;
+        int size = HEADER + data.length;
+        try {
+            if (buffer.remaining() < size) {
+                // 当前窗口已满 映射下一个窗口；超过压缩阈值时先压缩
+                buffer.force();
+                long end = base + buffer.position();
+                if (end >= threshold) {
+                    rebuild(Math.max(CHUNK, size));
+                } else {
+                    map(end, Math.max(CHUNK, size));
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("journal append failed", e);
+        }
+        write(buffer, crc, epoch, type, index, data);
+        commit();
+    }
+
+    /**
+     * 写入记录后 按刷盘间隔组提交 需持有锁
+     */
+    private void commit() {
+        if (syncInterval > 0) {
+            dirty = true;
+        } else {
+            buffer.force();
+        }
+    }
+
+    /**
+     * 打开日志文件 从文件末尾映射窗口，并按压缩后的大小确定下次压缩的阈值
+     */
+    private void open(int size) throws IOException {
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+        long end = channel.size();
+        threshold = compactSize > 0 ? Math.max(compactSize, end * 2) : Long.MAX_VALUE;
+        map(end, size);
+    }
+
+    /**
+     * 运行中压缩：回放已写入的记录 以待处理原料重建日志文件，需持有锁且已刷盘；
+     * 旧文件的映射在替换后不再写入，由 GC 回收
+     */
+    private void rebuild(int size) throws IOException {
+        channel.close();
+        raf.close();
+        long before = base + buffer.position();
+        compact(replay());
+        open(size);
+        Logger.e(TAG, " compact %s -> %s", before, base);
+    }
+
+    /**
+     * 从文件偏移 position 映射窗口
+     */
+    private void map(long position, int size) throws IOException {
+        base = position;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+    }
+
+    private static void write(ByteBuffer buffer, CRC32 crc, int epoch, byte type, int index, byte[] data) {
+        buffer.putInt(data.length);
+        buffer.putInt(checksum(crc, epoch, type, index, data));
+        buffer.putInt(epoch);
+        buffer.put(type);
+        buffer.putInt(index);
+        buffer.put(data);
+    }
+
+    private static int checksum(CRC32 crc, int epoch, byte type, int index, byte[] data) {
+        crc.reset();
+        updateInt(crc, epoch);
+        crc.update(type);
+        updateInt(crc, index);
+        crc.update(data, 0, data.length);
+        return (int) crc.getValue();
+    }
+
+    private static void updateInt(CRC32 crc, int value) {
+        crc.update(value >>> 24);
+        crc.update(value >>> 16);
+        crc.update(value >>> 8);
+        crc.update(value);
+    }
+
+    /**
+     * 回放日志
+     *
+     * @return key:工序索引 value:待处理原料 按进入顺序
+     */
+    private Map<Integer, LinkedHashMap<Object, IM>> replay() throws IOException {
+        Map<Integer, LinkedHashMap<Object, IM>> pending = new HashMap<>();
+        if (!file.exists() || file.length() < FILE_HEADER) return pending;
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            ByteBuffer buffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+            if (buffer.getInt() != MAGIC) {
+                Logger.e(TAG, " replay 文件格式错误:%s", file);
+                return pending;
+            }
+            int epoch = buffer.getInt();
+            CRC32 crc = new CRC32();
+            while (buffer.remaining() >= HEADER) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                int recordEpoch = buffer.getInt();
+                byte type = buffer.get();
+                int index = buffer.getInt();
+                // 日志末尾：未写入、写入不完整 或之前纪元的记录
+                if (type == 0 || recordEpoch != epoch || length < 0 || length > buffer.remaining()) break;
+                byte[] data = new byte[length];
+                buffer.get(data);
+                if (checksum(crc, recordEpoch, type, index, data) != checksum) break;
+                LinkedHashMap<Object, IM> ms = pending.get(index);
+                if (null == ms) {
+                    ms = new LinkedHashMap<>();
+                    pending.put(index, ms);
+                }
+                if (type == CLEAR) {
+                    ms.clear();
+                    continue;
+                }
+                IM m = serializer.deserialize(data);
+                Object key = m.key();
+                ms.remove(key);
+                if (type == APPLY) ms.put(key, m);
+            }
+        } finally {
+            in.close();
+        }
+        Iterator<Map.Entry<Integer, LinkedHashMap<Object, IM>>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().getValue().isEmpty()) it.remove();
+        }
+        return pending;
+    }
+
+    /**
+     * 将待处理原料写入临时文件 再替换日志文件
+     */
+    private void compact(Map<Integer, LinkedHashMap<Object, IM>> pending) throws IOException {
+        List<byte[]> records = new ArrayList<>();
+        List<Integer> indexs = new ArrayList<>();
+        long size = FILE_HEADER;
+        for (Map.Entry<Integer, LinkedHashMap<Object, IM>> entry : pending.entrySet()) {
+            for (IM m : entry.getValue().values()) {
+                byte[] data = serializer.serialize(m);
+                records.add(data);
+                indexs.add(entry.getKey());
+                size += HEADER + data.length;
+            }
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        RandomAccessFile out = new RandomAccessFile(tmp, "rw");
+        try {
+            out.setLength(0);
+            MappedByteBuffer buffer = out.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(MAGIC);
+            buffer.putInt(epoch);
+            for (int i = 0; i < records.size(); i++) {
+                write(buffer, crc, epoch, APPLY, indexs.get(i), records.get(i));
+            }
+            buffer.force();
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            // 部分平台不能覆盖已存在的文件
+            if (!file.delete() || !tmp.renameTo(file)) {
+                throw new IOException("journal compact failed: " + file);
+            }
+        }
+    }
+}
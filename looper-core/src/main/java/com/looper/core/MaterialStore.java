@@ -0,0 +1,652 @@
+package com.looper.core;
+
+import com.looper.interfaces.IDedup;
+import com.looper.interfaces.IMaterial;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * 工序的原料仓库：
+ * 1. 待处理原料：按 IMaterial.priority() 分级，每级为按添加顺序的队列，以 IMaterial.key() 哈希索引，
+ * 出队、移除、重复判定为O(优先级数)，未使用优先级时为O(1)；记录添加时间，出队时统计排队耗时。
+ * 出队取优先级最高的原料，同优先级先进先出；开启老化时，各级最早原料每等待一个老化间隔优先级视为提升一级，避免低优先级原料饿死。
+ * 2. 成功、失败原料：以 key 哈希索引的集合，用于重复添加的判定；成功集合可替换为有界或概率的去重集合（IDedup）。
+ * 3. 处理中原料：已弹出未处理完毕的原料 key，同一原料不会被并行处理。
+ * 4. 待重试原料：按到期时间排序的延迟队列，到期后移入待处理队列的最后，不占用待处理队列。
+ * 5. 分区（可选）：按 IMaterial.partitionKey() 的哈希将各级队列分为多个分区，分区内有原料处理中或待重试时不出队，
+ * 即同一分区的原料严格依次处理，不同分区并行；重试的原料回到分区最前，分区内顺序不变。出队为O(优先级数 × 分区数)。
+ * 注意：非线程安全，由调用方（工序）加锁；size() 及 isSuccess() 可不加锁读取。
+ *
+ * @param <IM> IMaterial
+ */
+public class MaterialStore<IM extends IMaterial> {
+    // 默认老化间隔 毫秒
+    public static final long AGING = 1000;
+    // 待处理原料：key:优先级 高优先级在前 value:该级各分区按添加顺序的队列
+    private final TreeMap<Integer, Level<IM>> levels = new TreeMap<>(Collections.<Integer>reverseOrder());
+    // 老化间隔 纳秒 小于等于0：不老化
+    private long aging = AGING * 1000000;
+    // 分区数 0：不分区
+    private int partitions;
+    // 各分区处理中及待重试的原料数 不分区时不记录
+    private int[] busy = new int[1];
+    // 各分区待继续处理的原料（重试），先于分区内其他原料出队
+    private Slot<IM>[] resume = newSlots(1);
+    private final LinkedHashMap<Object, IM> error = new LinkedHashMap<>();
+    // 失败原料的只读快照 失败集合变化时失效
+    private List<IM> errorSnapshot;
+    // 供添加原料方无锁判定是否已成功
+    private volatile IDedup success = Dedup.exact();
+    // 处理中原料 key:原料key
+    private final HashMap<Object, IM> running = new HashMap<>();
+    // 待重试原料：key 到重试记录，延迟队列中被替换或移除的记录在出队时丢弃
+    private final HashMap<Object, Retry<IM>> retrying = new HashMap<>();
+    private final PriorityQueue<Retry<IM>> retryQueue = new PriorityQueue<>(11, new Comparator<Retry<IM>>() {
+        @Override
+        public int compare(Retry<IM> a, Retry<IM> b) {
+            if (a.due != b.due) return a.due < b.due ? -1 : 1;
+            // 到期时间相同 按加入顺序
+            return a.seq < b.seq ? -1 : (a.seq == b.seq ? 0 : 1);
+        }
+    });
+    private long retrySeq;
+    // 待处理原料数 供无锁读取
+    private volatile int size;
+    // 待重试原料数 供无锁读取
+    private volatile int retryCount;
+    // 排队耗时 可为null
+    private final Histogram waits;
+
+    public MaterialStore() {
+        this(null);
+    }
+
+    /**
+     * @param waits 出队时记录排队耗时 微秒
+     */
+    public MaterialStore(Histogram waits) {
+        this.waits = waits;
+    }
+
+    /**
+     * 添加原料，重复添加处理规则：
+     * 1. 已处理成功的原料，不添加
+     * 2. 已处理失败的原料，移出失败集合后添加
+     * 3. 已在队列中的原料，先移除再添加到队尾（分区时为所属分区的队尾）
+     *
+     * @return 添加原料的记录数
+     */
+    public int apply(IM m) {
+        return apply(m, System.nanoTime());
+    }
+
+    /**
+     * @param time 添加时间 System.nanoTime()
+     * @see #apply(IMaterial)
+     */
+    public int apply(IM m, long time) {
+        Object key = m.key();
+        //已经成功 不添加
+        if (success.contains(key)) {
+            return 0;
+        }
+        // 已失败 移出error列表 再添加
+        if (null != error.remove(key)) errorSnapshot = null;
+        // 等待重试 重新添加后立即可处理
+        Retry<IM> retry = retrying.remove(key);
+        if (null != retry) {
+            retryCount = retrying.size();
+            release(retry.m);
+        }
+        // 添加,若存在先移除
+        link(m, time);
+        return 1;
+    }
+
+    /**
+     * 重新加入待处理队列，不做重复判定（用于重试）
+     * 不分区时添加到队尾，分区时回到所属分区最前
+     */
+    public void offer(IM m) {
+        long time = System.nanoTime();
+        if (partitions > 0) {
+            int lane = partition(m);
+            Slot<IM> slot = resume[lane];
+            if (null == slot || slot.m.key().equals(m.key())) {
+                unlink(m);
+                resume[lane] = new Slot<>(m, time);
+                size = size + 1;
+                return;
+            }
+        }
+        link(m, time);
+    }
+
+    /**
+     * 设置成功原料的去重集合，已记录的成功原料不迁移
+     *
+     * @param dedup null：精确去重 不淘汰
+     */
+    public void setDedup(IDedup dedup) {
+        success = null == dedup ? Dedup.exact() : dedup;
+    }
+
+    /**
+     * 设置老化间隔
+     *
+     * @param aging 毫秒 小于等于0：不老化，严格按优先级
+     */
+    public void setAging(long aging) {
+        this.aging = aging * 1000000;
+    }
+
+    /**
+     * 设置分区数，待处理原料按添加时间重新分区，处理中及待重试的原料占用新的分区
+     *
+     * @param partitions 分区数 小于等于0：不分区
+     */
+    public void setPartitions(int partitions) {
+        if (partitions < 0) partitions = 0;
+        if (partitions == this.partitions) return;
+        List<Slot<IM>> slots = new ArrayList<>(size);
+        for (Slot<IM> slot : resume) {
+            if (null != slot) slots.add(slot);
+        }
+        for (Level<IM> level : levels.values()) {
+            for (LinkedHashMap<Object, Slot<IM>> lane : level.lanes) {
+                slots.addAll(lane.values());
+            }
+        }
+        Collections.sort(slots, new Comparator<Slot<IM>>() {
+            @Override
+            public int compare(Slot<IM> a, Slot<IM> b) {
+                return a.time < b.time ? -1 : (a.time == b.time ? 0 : 1);
+            }
+        });
+        this.partitions = partitions;
+        int lanes = Math.max(1, partitions);
+        busy = new int[lanes];
+        resume = newSlots(lanes);
+        levels.clear();
+        size = 0;
+        for (Slot<IM> slot : slots) {
+            link(slot.m, slot.time);
+        }
+        for (IM m : running.values()) {
+            hold(m);
+        }
+        for (Retry<IM> retry : retrying.values()) {
+            hold(retry.m);
+        }
+    }
+
+    /**
+     * 原料所属分区 不分区时为0
+     */
+    private int partition(IM m) {
+        if (partitions <= 0) return 0;
+        Object key = m.partitionKey();
+        int h = null == key ? 0 : key.hashCode();
+        // 高位参与 避免低位相同的哈希集中到同一分区
+        h ^= h >>> 16;
+        return (h & 0x7fffffff) % partitions;
+    }
+
+    /**
+     * 占用原料所属分区
+     */
+    private void hold(IM m) {
+        if (partitions > 0) busy[partition(m)]++;
+    }
+
+    /**
+     * 释放原料所属分区
+     */
+    private void release(IM m) {
+        if (partitions <= 0) return;
+        int lane = partition(m);
+        if (busy[lane] > 0) busy[lane]--;
+    }
+
+    /**
+     * 添加到所属优先级、分区的队尾 若存在先移除
+     */
+    private void link(IM m, long time) {
+        unlink(m);
+        int priority = m.priority();
+        Level<IM> level = levels.get(priority);
+        if (null == level) {
+            level = new Level<>(busy.length);
+            levels.put(priority, level);
+        }
+        level.lanes[partition(m)].put(m.key(), new Slot<>(m, time));
+        level.size++;
+        size = size + 1;
+    }
+
+    /**
+     * 移除待处理原料 先在原料的优先级查找，原料优先级变化时再查找其他级
+     * 同一 key 的原料需属于同一分区
+     */
+    private Slot<IM> unlink(IM m) {
+        Object key = m.key();
+        int lane = partition(m);
+        Slot<IM> slot = resume[lane];
+        if (null != slot && slot.m.key().equals(key)) {
+            resume[lane] = null;
+            size = size - 1;
+            return slot;
+        }
+        int priority = m.priority();
+        Level<IM> level = levels.get(priority);
+        slot = null == level ? null : level.lanes[lane].remove(key);
+        // 所属级未找到时 不论级数均查找其他级：仅一级时原料可能以新的优先级重复添加
+        if (null == slot) {
+            for (Map.Entry<Integer, Level<IM>> other : levels.entrySet()) {
+                if (other.getValue() == level) continue;
+                slot = other.getValue().lanes[lane].remove(key);
+                if (null != slot) {
+                    level = other.getValue();
+                    priority = other.getKey();
+                    break;
+                }
+            }
+        }
+        if (null != slot) {
+            level.size--;
+            size = size - 1;
+            // 仅剩一级时保留 避免反复创建
+            if (level.size == 0 && levels.size() > 1) levels.remove(priority);
+        }
+        return slot;
+    }
+
+    /**
+     * 队列中最早添加且不在处理中的原料
+     */
+    private Slot<IM> head(LinkedHashMap<Object, Slot<IM>> queue) {
+        for (Map.Entry<Object, Slot<IM>> entry : queue.entrySet()) {
+            // 同一原料正在处理（处理中被重复添加或待重试），跳过
+            if (!running.containsKey(entry.getKey())) return entry.getValue();
+        }
+        return null;
+    }
+
+    /**
+     * 加入待重试队列，到期后由 promote 移入待处理队列；分区时等待期间占用所属分区
+     *
+     * @param due 到期时间 毫秒
+     */
+    public void delay(IM m, long due) {
+        Object key = m.key();
+        Retry<IM> retry = new Retry<>(m, due, retrySeq++);
+        Retry<IM> old = retrying.put(key, retry);
+        if (null != old) release(old.m);
+        hold(m);
+        retryQueue.offer(retry);
+        retryCount = retrying.size();
+    }
+
+    /**
+     * 到期的待重试原料移入待处理队列
+     *
+     * @param now 当前时间 毫秒
+     * @return 移入的原料数
+     */
+    public int promote(long now) {
+        int count = 0;
+        Retry<IM> retry;
+        while (null != (retry = retryQueue.peek()) && retry.due <= now) {
+            retryQueue.poll();
+            Object key = retry.m.key();
+            // 已被重新添加、移除或替换
+            if (retrying.get(key) != retry) continue;
+            retrying.remove(key);
+            release(retry.m);
+            offer(retry.m);
+            count++;
+        }
+        retryCount = retrying.size();
+        return count;
+    }
+
+    /**
+     * 最早到期的待重试时间
+     *
+     * @return 到期时间 毫秒，-1：无待重试原料
+     */
+    public long nextRetry() {
+        Retry<IM> retry;
+        while (null != (retry = retryQueue.peek())) {
+            if (retrying.get(retry.m.key()) == retry) return retry.due;
+            retryQueue.poll();
+        }
+        return -1;
+    }
+
+    /**
+     * 原料是否在待重试队列中
+     */
+    public boolean isRetrying(IM m) {
+        return retrying.containsKey(m.key());
+    }
+
+    /**
+     * 待重试原料数 可不加锁读取
+     */
+    public int retryCount() {
+        return retryCount;
+    }
+
+    /**
+     * 获取优先级最高中最早添加的原料 不移出；分区时待继续处理的原料在前
+     */
+    public IM peek() {
+        if (size == 0) return null;
+        for (Slot<IM> slot : resume) {
+            if (null != slot) return slot.m;
+        }
+        for (Level<IM> level : levels.values()) {
+            Slot<IM> first = null;
+            for (LinkedHashMap<Object, Slot<IM>> lane : level.lanes) {
+                if (lane.isEmpty()) continue;
+                Slot<IM> slot = lane.values().iterator().next();
+                if (null == first || slot.time < first.time) first = slot;
+            }
+            if (null != first) return first.m;
+        }
+        return null;
+    }
+
+    /**
+     * 弹出优先级最高（含老化提升）中最早添加且不在处理中的原料，并标记为处理中；分区时跳过被占用的分区
+     * 处理完毕需调用 finish
+     */
+    public IM poll() {
+        return poll(System.nanoTime());
+    }
+
+    /**
+     * @param now 弹出时间 System.nanoTime() 用于统计排队耗时
+     * @see #poll()
+     */
+    public IM poll(long now) {
+        if (size == 0) return null;
+        boolean aged = aging > 0 && levels.size() > 1;
+        Slot<IM> best = null;
+        int bestLane = 0;
+        long bestScore = 0;
+        for (int lane = 0; lane < busy.length; lane++) {
+            if (busy[lane] > 0) continue;
+            // 分区内待继续处理的原料优先
+            Slot<IM> head = resume[lane];
+            if (null == head || running.containsKey(head.m.key())) head = head(lane, now, aged);
+            if (null == head) continue;
+            // 有效优先级：优先级 + 已等待的老化间隔数，相同时取高优先级、再取最早添加
+            long score = score(head, now, aged);
+            if (null == best || score > bestScore || (score == bestScore
+                    && (head.m.priority() > best.m.priority()
+                    || (head.m.priority() == best.m.priority() && head.time < best.time)))) {
+                best = head;
+                bestLane = lane;
+                bestScore = score;
+            }
+        }
+        if (null == best) return null;
+        IM m = best.m;
+        if (resume[bestLane] == best) {
+            resume[bestLane] = null;
+            size = size - 1;
+        } else {
+            unlink(m);
+        }
+        running.put(m.key(), m);
+        hold(m);
+        if (null != waits) waits.record((now - best.time) / 1000);
+        return m;
+    }
+
+    /**
+     * 分区中优先级最高（含老化提升）的可用原料
+     */
+    private Slot<IM> head(int lane, long now, boolean aged) {
+        Slot<IM> best = null;
+        long bestScore = 0;
+        for (Level<IM> level : levels.values()) {
+            Slot<IM> head = head(level.lanes[lane]);
+            if (null == head) continue;
+            // 不老化 首个可用即为优先级最高
+            if (!aged) return head;
+            long score = score(head, now, true);
+            if (null == best || score > bestScore) {
+                best = head;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    private long score(Slot<IM> slot, long now, boolean aged) {
+        int priority = slot.m.priority();
+        return aged ? priority + (now - slot.time) / aging : priority;
+    }
+
+    /**
+     * 批量弹出原料，至多max个
+     */
+    public List<IM> poll(int max) {
+        return poll(max, System.nanoTime());
+    }
+
+    /**
+     * @param now 弹出时间 System.nanoTime() 用于统计排队耗时
+     * @see #poll(int)
+     */
+    public List<IM> poll(int max, long now) {
+        List<IM> ms = new ArrayList<>(Math.min(max, size));
+        IM m;
+        while (ms.size() < max && null != (m = poll(now))) {
+            ms.add(m);
+        }
+        return ms;
+    }
+
+    /**
+     * 不经待处理队列 直接标记为处理中（工序融合），处理完毕需调用 finish
+     *
+     * @return false：原料已在处理中或待重试，或所属分区被占用、有待处理原料
+     */
+    public boolean claim(IM m) {
+        Object key = m.key();
+        if (running.containsKey(key) || retrying.containsKey(key)) return false;
+        if (partitions > 0) {
+            // 分区内有先到的原料 不可越过
+            int lane = partition(m);
+            if (busy[lane] > 0 || null != resume[lane]) return false;
+            for (Level<IM> level : levels.values()) {
+                if (!level.lanes[lane].isEmpty()) return false;
+            }
+        }
+        running.put(key, m);
+        hold(m);
+        return true;
+    }
+
+    /**
+     * 原料处理完毕，移出处理中集合 释放所属分区
+     */
+    public void finish(IM m) {
+        if (null != running.remove(m.key())) release(m);
+    }
+
+    public int runningCount() {
+        return running.size();
+    }
+
+    /**
+     * 原料是否在待处理队列中
+     */
+    public boolean contains(IM m) {
+        Object key = m.key();
+        int lane = partition(m);
+        Slot<IM> slot = resume[lane];
+        if (null != slot && slot.m.key().equals(key)) return true;
+        Level<IM> level = levels.get(m.priority());
+        if (null != level && level.lanes[lane].containsKey(key)) return true;
+        for (Level<IM> other : levels.values()) {
+            if (other != level && other.lanes[lane].containsKey(key)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 丢弃优先级最低中最早添加且不在处理中的原料，不丢弃待继续处理的原料
+     *
+     * @return 丢弃的原料 null：无可丢弃原料
+     */
+    public IM drop() {
+        for (Level<IM> level : levels.descendingMap().values()) {
+            Slot<IM> oldest = null;
+            for (LinkedHashMap<Object, Slot<IM>> lane : level.lanes) {
+                Slot<IM> head = head(lane);
+                if (null != head && (null == oldest || head.time < oldest.time)) oldest = head;
+            }
+            if (null == oldest) continue;
+            unlink(oldest.m);
+            return oldest.m;
+        }
+        return null;
+    }
+
+    public boolean remove(IM m) {
+        Object key = m.key();
+        boolean removed = null != unlink(m);
+        Retry<IM> retry = retrying.remove(key);
+        if (null != retry) {
+            retryCount = retrying.size();
+            release(retry.m);
+            removed = true;
+        }
+        return removed;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 原料是否已处理成功 可不加锁调用
+     */
+    public boolean isSuccess(IM m) {
+        return success.contains(m.key());
+    }
+
+    /**
+     * 标记处理成功：移出失败集合，加入成功集合
+     */
+    public void success(IM m) {
+        Object key = m.key();
+        if (null != error.remove(key)) errorSnapshot = null;
+        success.add(key);
+    }
+
+    /**
+     * 标记处理失败：移出成功集合，加入失败集合
+     */
+    public void error(IM m) {
+        Object key = m.key();
+        success.remove(key);
+        error.put(key, m);
+        errorSnapshot = null;
+    }
+
+    public int successCount() {
+        return success.size();
+    }
+
+    public int errorCount() {
+        return error.size();
+    }
+
+    /**
+     * 失败原料的只读快照，按失败顺序
+     * 失败集合未变化时返回同一快照，不重复拷贝
+     */
+    public List<IM> errors() {
+        if (null == errorSnapshot) {
+            errorSnapshot = Collections.unmodifiableList(new ArrayList<>(error.values()));
+        }
+        return errorSnapshot;
+    }
+
+    public void clear() {
+        levels.clear();
+        size = 0;
+        resume = newSlots(busy.length);
+        error.clear();
+        errorSnapshot = null;
+        success.clear();
+        for (Retry<IM> retry : retrying.values()) {
+            release(retry.m);
+        }
+        retrying.clear();
+        retryQueue.clear();
+        retryCount = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <IM> Slot<IM>[] newSlots(int size) {
+        return new Slot[size];
+    }
+
+    /**
+     * 一个优先级的待处理原料：各分区按添加顺序的队列，不分区时仅一个
+     */
+    private static class Level<IM> {
+        final LinkedHashMap<Object, Slot<IM>>[] lanes;
+        int size;
+
+        @SuppressWarnings("unchecked")
+        Level(int count) {
+            lanes = new LinkedHashMap[count];
+            for (int i = 0; i < count; i++) {
+                lanes[i] = new LinkedHashMap<>();
+            }
+        }
+    }
+
+    private static class Slot<IM> {
+        final IM m;
+        // 添加时间 System.nanoTime()
+        final long time;
+
+        Slot(IM m, long time) {
+            this.m = m;
+            this.time = time;
+        }
+    }
+
+    private static class Retry<IM> {
+        final IM m;
+        final long due;
+        final long seq;
+
+        Retry(IM m, long due, long seq) {
+            this.m = m;
+            this.due = due;
+            this.seq = seq;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.looper.core;
+
+import com.looper.interfaces.IHistogram;
+import com.looper.interfaces.IMetrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 工序的运行指标：计数为原子变量，耗时分布无锁记录，读取不加工序的锁
+ * 队列深度及处理中任务数直接读取工序的当前值。
+ */
+public class Metrics implements IMetrics {
+    final AtomicLong processed = new AtomicLong();
+    final AtomicLong succeeded = new AtomicLong();
+    final AtomicLong failed = new AtomicLong();
+    final AtomicLong retried = new AtomicLong();
+    final AtomicLong timedOut = new AtomicLong();
+    final AtomicLong cacheHits = new AtomicLong();
+    final AtomicLong cacheMisses = new AtomicLong();
+    final Histogram serviceTime = new Histogram();
+    final Histogram queueWait = new Histogram();
+    private final Procedurer<?, ?> procedurer;
+
+    Metrics(Procedurer<?, ?> procedurer) {
+        this.procedurer = procedurer;
+    }
+
+    @Override
+    public long processed() {
+        return processed.get();
+    }
+
+    @Override
+    public long succeeded() {
+        return succeeded.get();
+    }
+
+    @Override
+    public long failed() {
+        return failed.get();
+    }
+
+    @Override
+    public long retried() {
+        return retried.get();
+    }
+
+    @Override
+    public long timedOut() {
+        return timedOut.get();
+    }
+
+    @Override
+    public long cacheHits() {
+        return cacheHits.get();
+    }
+
+    @Override
+    public long cacheMisses() {
+        return cacheMisses.get();
+    }
+
+    @Override
+    public int queueDepth() {
+        return procedurer.count();
+    }
+
+    @Override
+    public int inFlight() {
+        return procedurer.inFlight();
+    }
+
+    @Override
+    public IHistogram serviceTime() {
+        return serviceTime;
+    }
+
+    @Override
+    public IHistogram queueWait() {
+        return queueWait;
+    }
+
+    @Override
+    public void reset() {
+        processed.set(0);
+        succeeded.set(0);
+        failed.set(0);
+        retried.set(0);
+        timedOut.set(0);
+        cacheHits.set(0);
+        cacheMisses.set(0);
+        serviceTime.reset();
+        queueWait.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "processed:" + processed() +
+                ", succeeded:" + succeeded() +
+                ", failed:" + failed() +
+                ", retried:" + retried() +
+                ", timedOut:" + timedOut() +
+                ", cacheHits:" + cacheHits() +
+                ", cacheMisses:" + cacheMisses() +
+                ", queueDepth:" + queueDepth() +
+                ", inFlight:" + inFlight() +
+                ", serviceTime:" + serviceTime +
+                ", queueWait:" + queueWait +
+                '}';
+    }
+}
@@ -0,0 +1,125 @@
+package com.looper.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 有界无锁 多生产者单消费者 环形队列（Vyukov 序号槽位算法）：
+ * 1. 每个槽位维护序号，生产者通过 CAS 抢占写入位置，写入后发布序号，队列满时 offer 返回false，不阻塞。
+ * 2. 消费者读取序号确认槽位已发布后取出，并将序号推进一圈供生产者复用。
+ * 3. 入队、出队均不分配对象。
+ * 4. 可随元素写入一个时间戳（如入队时间），出队后由 lastTime() 读取。
+ * 注意：同一时刻只能有一个消费者调用 poll，由调用方保证。
+ *
+ * @param <E>
+ */
+public class MpscArrayQueue<E> {
+    private final int mask;
+    private final AtomicReferenceArray<E> buffer;
+    private final AtomicLongArray sequences;
+    // 元素的时间戳
+    private final AtomicLongArray times;
+    // 最近出队元素的时间戳 仅消费者读写
+    private long lastTime;
+    // 生产者写入位置
+    private final AtomicLong tail = new AtomicLong();
+    // 消费者读取位置 仅消费者写入
+    private volatile long head;
+
+    /**
+     * @param capacity 容量 向上取2的幂
+     */
+    public MpscArrayQueue(int capacity) {
+        int size = 1;
+        while (size < capacity) size <<= 1;
+        mask = size - 1;
+        buffer = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        times = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * 入队 可多线程调用
+     *
+     * @return false：队列已满
+     */
+    public boolean offer(E e) {
+        return offer(e, 0);
+    }
+
+    /**
+     * 入队 可多线程调用
+     *
+     * @param time 时间戳
+     * @return false：队列已满
+     */
+    public boolean offer(E e, long time) {
+        long pos;
+        int index;
+        for (; ; ) {
+            pos = tail.get();
+            index = (int) (pos & mask);
+            long dif = sequences.get(index) - pos;
+            if (dif == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) break;
+            } else if (dif < 0) {
+                // 槽位未被消费 队列已满
+                return false;
+            }
+            // 其他生产者已抢占 重试
+        }
+        buffer.lazySet(index, e);
+        times.lazySet(index, time);
+        // 发布：序号写入有序于元素写入
+        sequences.lazySet(index, pos + 1);
+        return true;
+    }
+
+    /**
+     * 出队 仅单个消费者调用
+     *
+     * @return null：队列为空
+     */
+    public E poll() {
+        long pos = head;
+        int index = (int) (pos & mask);
+        if (sequences.get(index) != pos + 1) {
+            // 未发布
+            return null;
+        }
+        E e = buffer.get(index);
+        lastTime = times.get(index);
+        buffer.lazySet(index, null);
+        sequences.lazySet(index, pos + mask + 1);
+        head = pos + 1;
+        return e;
+    }
+
+    /**
+     * 最近一次 poll 出队元素的时间戳 仅消费者调用
+     */
+    public long lastTime() {
+        return lastTime;
+    }
+
+    /**
+     * 近似元素数
+     */
+    public int size() {
+        long size = tail.get() - head;
+        if (size < 0) return 0;
+        return (int) Math.min(size, mask + 1);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,1719 @@
+package com.looper.core;
+
+import com.looper.Logger;
+import com.looper.Material;
+import com.looper.Platform;
+import com.looper.interfaces.IConcurrencyLimit;
+import com.looper.interfaces.IDedup;
+import com.looper.interfaces.IJournal;
+import com.looper.interfaces.IProcedure;
+import com.looper.interfaces.IMaterial;
+import com.looper.interfaces.IMetrics;
+import com.looper.interfaces.IMetricsListener;
+import com.looper.interfaces.IProcessStatus;
+import com.looper.interfaces.IPromise;
+import com.looper.interfaces.IResultCache;
+import com.looper.interfaces.IRetryPolicy;
+import com.looper.interfaces.IScheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 当个工序：
+ * 自动轮训工序：
+ * 1. 自动轮训直到materials为空，pop的原料为null 此时回调onComplete
+ * 2. apply时，只有在处理中的原料数未达并行数时才手动触发loopNext。
+ * 非自动轮训工序：
+ * 1. 非自动轮训，需在apply是手动触发loopNext，并且在处理出异常时，未到最大尝试次数是，手动触发loopNext，直至到最大尝试次数。
+ * 2. 在达到最大尝试次数时，即为处理出错，若此时materials为空，在视为处理完毕，回调onComplete
+ * 3. 原料只能添加一个处理一个，若成功，在等待next原料apply；若出异常 未到最大尝试次数，
+ * 手动触发loopNext，达最大尝试次数，视为出错，终止，此时需要向管道分发原料
+ * 轮训由调度器 IScheduler 驱动，默认调度器由运行平台决定（Android：HandlerThread，JVM：ScheduledExecutorService）。
+ * 并行处理（仅自动轮训）：
+ * 1. 并行数为1时，原料在轮训线程上逐个处理。
+ * 2. 并行数大于1时，轮训线程在工作线程池启动工作循环，工作循环数不超过并行数，同一原料不会被并行处理。
+ *    调度器提供工作线程（如 ForkJoinScheduler 的共享线程池）时使用调度器的，否则工序自建工作线程池。
+ * 3. 原料列表为空且无处理中的原料，视为处理完毕，回调onComplete。
+ * 4. 设置自适应并行数（IConcurrencyLimit）时，每个任务处理完毕按耗时及结果调整并行数。
+ * 批量处理（仅自动轮训）：
+ * 原料数达到批量数，或等待超过最长等待时间，弹出一批原料回调 onProcessBatch，一批原料视为一个处理中任务。
+ * 原料接收：
+ * 添加原料写入无锁的多生产者单消费者接收队列，由轮训线程在弹出原料前汇入原料仓库，添加方与轮训线程不竞争锁；
+ * 接收队列已满或原料列表已满时，添加方持锁汇入后按容量策略添加。
+ * 优先级：
+ * 按原料优先级弹出，同优先级先进先出；等待的原料按老化间隔逐级提升，避免低优先级原料饿死。
+ * 超时及截止时间：
+ * 单次处理超过超时时间或到达原料截止时间时，由共用的检查线程标记取消并中断处理线程，超时视为一次失败的尝试；
+ * 弹出时已过截止时间的原料不处理，视为处理失败离开工序。
+ * 限流：
+ * 按令牌桶限制每秒处理的原料数，所有工作循环共用；令牌不足时不弹出原料，延迟到令牌补充后轮训，不占用线程。
+ * 分区：
+ * 按原料 partitionKey() 的哈希分区，同一分区的原料依次处理（含重试），不同分区并行，并行数仍由 setConcurrency 限制。
+ * 容量限制：
+ * 原料列表达到容量时按 Overflow 策略：阻塞添加方、拒绝添加 或 丢弃最早原料；重试的原料不受容量限制。
+ * 重试：
+ * 处理失败未达最大尝试次数时，按 IRetryPolicy 计算等待时间：为0 立即加入原料列表的最后；
+ * 否则移入待重试队列，由调度器在最早到期时间移入原料列表的最后，等待期间不阻塞其他原料，仍计入 count()。
+ * 日志（可选）：
+ * 原料写入接收队列前记录 apply；处理成功或达最大尝试次数时，在 onAfterProcess（流转下道工序）之后记录 finish；
+ * 移除、丢弃、拒绝的原料记录 finish。设置日志时恢复日志中本工序的待处理原料。
+ * 运行指标：
+ * 处理、成功、失败、重试计数及处理耗时、排队耗时分布，随时可读（getMetrics），可按间隔回调 IMetricsListener 导出。
+ * 原料计数：
+ * 原料进入工序前回调 onEnter，离开工序（成功、达最大尝试次数、被丢弃、拒绝、移除、清空，或与已在列表中的同一原料合并）回调 onLeave，
+ * 成功流转下道工序在离开本工序之前，供管道以计数判定处理完毕；已添加的原料未经处理即离开时另回调 onDiscard。
+ * 工序融合：
+ * applyInline 在上道工序的线程上直接处理原料，不经接收队列、原料列表及调度；处理中的原料仍计入处理中集合及并行数，
+ * 处理完毕的检查由调用方触发 loopNext。
+ *
+ * @param <M> 原料的类型
+ */
+public abstract class Procedurer<IM extends IMaterial<M>, M> implements IProcedure<IM, M> {
+    private final String TAG;
+    private final int index;
+    // 接收队列容量
+    private static final int INTAKE_CAPACITY = 1024;
+    // 轮训线程单次连续处理的最大原料数
+    private static final int LOOP_BURST = 64;
+    // runOnce 的结果
+    private static final int EMPTY = 0;
+    private static final int DONE = 1;
+    private static final int STALLED = 2;
+    private static final int WAITING = 3;
+    private static final int RETRY = 4;
+    private static final int BLOCKED = 5;
+    private static final int THROTTLED = 6;
+    private static final int SATURATED = 7;
+    private static final int STARTED = 8;
+    // 失败原因：超时 已过截止时间
+    private static final String TIMEOUT = "timeout";
+    private static final String DEADLINE = "deadline";
+    // 处理超时的检查线程 所有工序共用
+    private static ScheduledThreadPoolExecutor watchdog;
+    // 当前线程正在处理的尝试 供 onProcess 检查是否已取消
+    private static final ThreadLocal<Attempt> ATTEMPT = new ThreadLocal<>();
+    // 运行指标
+    private final Metrics metrics = new Metrics(this);
+    // 原料仓库：待处理队列 及 成功、失败集合，以其自身为锁
+    protected final MaterialStore<IM> _store = new MaterialStore<>(metrics.queueWait);
+    // 接收队列：添加方无锁写入，持有 _store 锁者汇入原料仓库
+    private final MpscArrayQueue<IM> _intake = new MpscArrayQueue<>(INTAKE_CAPACITY);
+    private final IScheduler scheduler;
+    // 轮训任务：弹出原料并处理
+    private final Runnable loopTask = new Runnable() {
+        @Override
+        public void run() {
+            dispatch();
+        }
+    };
+    // 重试任务：到期的待重试原料移入原料列表
+    private final Runnable retryTask = new Runnable() {
+        @Override
+        public void run() {
+            promote();
+        }
+    };
+    // 指标导出任务
+    private final Runnable reportTask = new Runnable() {
+        @Override
+        public void run() {
+            report();
+        }
+    };
+    private volatile IMetricsListener _metricsListener;
+    private volatile long _metricsInterval;
+    // 工作循环任务 所有工作线程共用
+    private final Runnable workerLoop = new Runnable() {
+        @Override
+        public void run() {
+            work();
+        }
+    };
+    // 是否暂停
+    private volatile boolean _pause;
+    // 正在处理的任务数（单个原料或一批原料）
+    private final AtomicInteger _inFlight = new AtomicInteger();
+    // 运行中的工作循环数
+    private final AtomicInteger _workers = new AtomicInteger();
+    // 异步处理：最多未完成的原料数 0：同步处理；未完成的原料数 及已完成待流转的结果
+    private volatile int _async;
+    private final AtomicInteger _outstanding = new AtomicInteger();
+    private final ConcurrentLinkedQueue<Promise> _completed = new ConcurrentLinkedQueue<>();
+    private volatile int _concurrency = 1;
+    // 自适应并行数 null：固定
+    private volatile IConcurrencyLimit _limit;
+    // 并行处理的工作线程池 并行数大于1时创建
+    private ThreadPoolExecutor workers;
+    private volatile int _maxTry = MAX_TRY;//最大尝试次数
+    private volatile int _delay;
+    // 单次处理超时 毫秒 0：不限
+    private volatile long _timeout;
+    // 限流 null：不限
+    private volatile RateLimiter _limiter;
+    private volatile CircuitBreaker _breaker;
+    private volatile IRetryPolicy _retryPolicy = RetryPolicy.IMMEDIATE;
+    private volatile IJournal<IM> _journal;
+    private volatile IResultCache<IM> _cache;
+    // 批量处理：批量数 最长等待时间 及当前批次的截止时间
+    private volatile int _batchSize = 1;
+    private volatile long _batchTimeout;
+    private volatile long _batchDeadline;
+    // 原料列表容量 及已满时的处理策略
+    private volatile int _capacity = UNBOUNDED;
+    private volatile Overflow _overflow = Overflow.BLOCK;
+    private volatile boolean _released;
+    // 等待原料列表有空余 需持有 _store 锁
+    private final ForkJoinPool.ManagedBlocker spaceBlocker = new ForkJoinPool.ManagedBlocker() {
+        @Override
+        public boolean block() throws InterruptedException {
+            if (!isReleasable()) {
+                _store.wait();
+                drain();
+            }
+            return isReleasable();
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return _released || _capacity <= UNBOUNDED || _store.size() < _capacity;
+        }
+    };
+    // 是否自定loopNext
+    private boolean autoLoopNext;
+
+    /**
+     * @param index        节点索引
+     * @param autoLoopNext 自动轮训
+     */
+    public Procedurer(int index, boolean autoLoopNext) {
+        this(index, autoLoopNext, Platform.get().schedulerFactory());
+    }
+
+    /**
+     * @param index        节点索引
+     * @param autoLoopNext 自动轮训
+     * @param factory      调度器工厂
+     */
+    public Procedurer(int index, boolean autoLoopNext, IScheduler.Factory factory) {
+        this.TAG = "Procedurer-" + index;
+        this.index = index;
+        this.autoLoopNext = autoLoopNext;
+        this.scheduler = factory.create(TAG);
+    }
+
+    @Override
+    public void setMaxTry(int maxTry) {
+        this._maxTry = maxTry;
+    }
+
+    public void setDelay(int delay) {
+        this._delay = delay;
+    }
+
+    @Override
+    public void setTimeout(long timeout) {
+        _timeout = Math.max(0, timeout);
+    }
+
+    @Override
+    public void setRateLimit(double permitsPerSecond, int burst) {
+        synchronized (this) {
+            RateLimiter limiter = _limiter;
+            if (permitsPerSecond <= 0) {
+                _limiter = null;
+            } else if (null == limiter) {
+                _limiter = new RateLimiter(permitsPerSecond, burst);
+            } else {
+                limiter.setRate(permitsPerSecond, burst);
+            }
+        }
+        loopNext(_delay);
+    }
+
+    @Override
+    public void setAsync(int maxOutstanding) {
+        _async = Math.max(0, maxOutstanding);
+        loopNext(_delay);
+    }
+
+    @Override
+    public void setCircuitBreaker(double failureRate, int window, long openTime) {
+        _breaker = failureRate <= 0 ? null : new CircuitBreaker(failureRate, window, openTime);
+        loopNext(_delay);
+    }
+
+    @Override
+    public Circuit circuit() {
+        CircuitBreaker breaker = _breaker;
+        return null == breaker ? Circuit.CLOSED : breaker.state();
+    }
+
+    @Override
+    public void setRetryPolicy(IRetryPolicy policy) {
+        this._retryPolicy = null == policy ? RetryPolicy.IMMEDIATE : policy;
+    }
+
+    @Override
+    public int setJournal(IJournal<IM> journal) {
+        _journal = journal;
+        if (null == journal) return 0;
+        // 恢复的原料已在日志中 不重复记录
+        return apply(journal.recover(index), false);
+    }
+
+    @Override
+    public IMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void setMetricsListener(IMetricsListener listener, long interval) {
+        _metricsListener = listener;
+        _metricsInterval = interval;
+        if (null == listener || interval <= 0) {
+            scheduler.cancel(reportTask);
+        } else {
+            scheduler.schedule(reportTask, interval);
+        }
+    }
+
+    private void report() {
+        IMetricsListener listener = _metricsListener;
+        long interval = _metricsInterval;
+        if (null == listener || interval <= 0 || _released) return;
+        listener.onMetrics(index, metrics);
+        scheduler.schedule(reportTask, interval);
+    }
+
+    @Override
+    public void setConcurrency(int concurrency) {
+        resize(concurrency);
+        loopNext(_delay);
+    }
+
+    @Override
+    public void setAdaptiveConcurrency(IConcurrencyLimit limit) {
+        _limit = limit;
+        if (null != limit) setConcurrency(limit.initial());
+    }
+
+    /**
+     * 调整并行数及自建工作线程池的线程数
+     */
+    private void resize(int concurrency) {
+        if (concurrency < 1) concurrency = 1;
+        synchronized (this) {
+            _concurrency = concurrency;
+            if (null != workers) {
+                if (concurrency > workers.getMaximumPoolSize()) {
+                    workers.setMaximumPoolSize(concurrency);
+                    workers.setCorePoolSize(concurrency);
+                } else {
+                    workers.setCorePoolSize(concurrency);
+                    workers.setMaximumPoolSize(concurrency);
+                }
+            }
+        }
+    }
+
+    /**
+     * 按任务的处理耗时及结果调整并行数，并行数增加时补充工作循环；计入熔断统计，半开的试探完成时轮训
+     *
+     * @param start 开始处理的时间
+     */
+    private void adapt(long start, boolean success) {
+        CircuitBreaker breaker = _breaker;
+        if (null != breaker && breaker.record(success)) loopNext(_delay);
+        IConcurrencyLimit limit = _limit;
+        if (null == limit || !autoLoopNext) return;
+        int concurrency = limit.onSample((System.nanoTime() - start) / 1000, _inFlight.get(), success);
+        int current = _concurrency;
+        if (concurrency < 1 || concurrency == current) return;
+        resize(concurrency);
+        Logger.e(TAG, " concurrency :%s", concurrency);
+        if (concurrency > current) loopNext(_delay);
+    }
+
+    @Override
+    public void setBatch(int size, long timeout) {
+        if (size < 1) size = 1;
+        if (timeout < 0) timeout = 0;
+        _batchSize = size;
+        _batchTimeout = timeout;
+        loopNext(_delay);
+    }
+
+    @Override
+    public void setDedup(IDedup dedup) {
+        synchronized (_store) {
+            _store.setDedup(dedup);
+        }
+    }
+
+    @Override
+    public void setResultCache(IResultCache<IM> cache) {
+        _cache = cache;
+    }
+
+    @Override
+    public void setAging(long aging) {
+        synchronized (_store) {
+            _store.setAging(aging);
+        }
+    }
+
+    @Override
+    public void setPartitions(int partitions) {
+        synchronized (_store) {
+            _store.setPartitions(partitions);
+        }
+        loopNext(_delay);
+    }
+
+    @Override
+    public void setCapacity(int capacity, Overflow overflow) {
+        if (capacity < 0) capacity = UNBOUNDED;
+        synchronized (_store) {
+            _capacity = capacity;
+            _overflow = null == overflow ? Overflow.BLOCK : overflow;
+            // 容量变化 唤醒阻塞的添加方
+            _store.notifyAll();
+        }
+    }
+
+    @Override
+    public int capacity() {
+        return _capacity;
+    }
+
+    /**
+     * 待处理原料数 含接收队列中未汇入的原料（可能包含重复添加的原料）及待重试的原料
+     */
+    @Override
+    public int count() {
+        return ready() + _store.retryCount();
+    }
+
+    /**
+     * 可立即处理的原料数 不含待重试的原料
+     */
+    private int ready() {
+        return _store.size() + _intake.size();
+    }
+
+    /**
+     * 添加任务原料
+     * 重复添加处理规则：
+     * 1. 已处理成功的原料，success列表中存在，不添加
+     * 2. 已处理失败的原料，error 列表中存在，移出error列表 后添加
+     * 规则1 在添加时判定，规则2及队列中重复原料的移除 在汇入原料仓库时处理
+     *
+     * @param obj 原料
+     */
+    @Override
+    public int apply(Object obj) {
+        return apply(obj, true);
+    }
+
+    @Override
+    public int applyInline(IM m) {
+        if (!autoLoopNext || _pause || _released || _batchSize > 1 || _async > 0) return apply(m);
+        if (_store.isSuccess(m)) return 0;
+        // 熔断或令牌不足 加入原料列表等待
+        CircuitBreaker breaker = _breaker;
+        if (null != breaker && breaker.acquire() != 0) return apply(m);
+        RateLimiter limiter = _limiter;
+        if (null != limiter && limiter.acquire(1) > 0) {
+            if (null != breaker) breaker.release();
+            return apply(m);
+        }
+        if (_inFlight.incrementAndGet() > _concurrency) {
+            _inFlight.decrementAndGet();
+            release(breaker, limiter, 1);
+            return apply(m);
+        }
+        boolean claimed;
+        synchronized (_store) {
+            claimed = _store.claim(m);
+        }
+        if (!claimed) {
+            _inFlight.decrementAndGet();
+            release(breaker, limiter, 1);
+            return apply(m);
+        }
+        logApply(_journal, m);
+        onEnter(1);
+        long start = System.nanoTime();
+        metrics.queueWait.record(0);
+        try {
+            process(m);
+        } catch (RuntimeException e) {
+            // 不影响上道工序
+            Logger.e(TAG, " applyInline :%s", e);
+        } finally {
+            synchronized (_store) {
+                _store.finish(m);
+            }
+            _inFlight.decrementAndGet();
+        }
+        metrics.serviceTime.record((System.nanoTime() - start) / 1000);
+        // 立即重试的原料已重新加入原料列表，处理期间添加的原料也可能因处理中的原料数已达并行数而未触发轮训
+        if (ready() > 0) loopNext(_delay);
+        return 1;
+    }
+
+    /**
+     * @param log 是否记录日志
+     */
+    private int apply(Object obj, boolean log) {
+        IJournal<IM> journal = log ? _journal : null;
+        int count = 0;
+        int surplus = count();
+        // 添加时间 同批原料共用
+        long now = System.nanoTime();
+        if (obj instanceof IMaterial) {//单个
+            IM m = (IM) obj;
+            if (!_store.isSuccess(m)) {
+                logApply(journal, m);
+                onEnter(1);
+                if (intake(m, now)) {
+                    count = 1;
+                } else {
+                    synchronized (_store) {
+                        drain();
+                        // 若存在先移除，再添加
+                        count = admit(m, now);
+                    }
+                }
+            }
+        } else if (obj instanceof List) {// 批量
+            List<IM> ms = (List<IM>) obj;
+            int len = null == ms ? 0 : ms.size();
+            int i = 0;
+            // 无锁写入接收队列 直至接收队列或原料列表已满
+            for (; i < len; i++) {
+                IM m = ms.get(i);
+                if (_store.isSuccess(m)) continue;
+                logApply(journal, m);
+                onEnter(1);
+                if (!intake(m, now)) break;
+                count++;
+            }
+            if (i < len) {
+                synchronized (_store) {
+                    drain();
+                    // 首个原料已记录
+                    count += admit(ms.get(i++), now);
+                    for (; i < len; i++) {
+                        IM m = ms.get(i);
+                        if (_store.isSuccess(m)) continue;
+                        logApply(journal, m);
+                        onEnter(1);
+                        count += admit(m, now);
+                    }
+                }
+            }
+        }
+        int current = count();
+        if (Logger.isDebug()) {
+            Logger.e(TAG, " surplus = " + surplus
+                    + "  apply = " + count
+                    + "  current = " + current);
+        }
+        // apply 后需要自动触发loopNext的情况：
+        // 1. 非自动轮训。
+        // 2. 自动轮训，且处理中的原料数未达并行数
+        // 3. 异步处理，且未完成数未达上限：已发起的异步处理计入处理中，但不占用工作线程
+        if (current > 0 && (!autoLoopNext || _inFlight.get() < _concurrency
+                || (_async > 0 && _outstanding.get() < _async))) {
+            loopNext(_delay);
+        }
+        return count;
+    }
+
+    /**
+     * 原料进入原料列表前记录日志
+     */
+    private void logApply(IJournal<IM> journal, IM m) {
+        if (null != journal) journal.apply(index, m);
+    }
+
+    /**
+     * 原料离开工序 记录日志
+     */
+    private void logFinish(IM m) {
+        IJournal<IM> journal = _journal;
+        if (null != journal) journal.finish(index, m);
+    }
+
+    /**
+     * 按容量限制添加原料，未添加时离开工序 需持有 _store 锁
+     */
+    private int admit(IM m, long time) {
+        int count = offer(m, time);
+        if (count == 0) onLeave(1);
+        return count;
+    }
+
+    /**
+     * 添加到原料仓库 需持有 _store 锁
+     * 与列表中或待重试的同一原料合并时 离开工序；已处理成功未添加时 记录离开日志
+     */
+    private int accept(IM m, long time) {
+        boolean merged = _store.contains(m) || _store.isRetrying(m);
+        int count = _store.apply(m, time);
+        if (count == 0) {
+            logFinish(m);
+        } else if (merged) {
+            onLeave(1);
+        }
+        return count;
+    }
+
+    /**
+     * 已添加的原料未经处理离开工序
+     */
+    private void discard(IM m) {
+        onDiscard(m);
+        onLeave(1);
+    }
+
+    /**
+     * 无锁写入接收队列
+     *
+     * @param time 添加时间
+     * @return false：接收队列或原料列表已满 需持锁添加
+     */
+    private boolean intake(IM m, long time) {
+        int capacity = _capacity;
+        if (capacity > UNBOUNDED && ready() >= capacity) {
+            return false;
+        }
+        return _intake.offer(m, time);
+    }
+
+    /**
+     * 接收队列汇入原料仓库 需持有 _store 锁
+     * 添加时已按容量策略准入，此处仅处理丢弃最早原料的策略
+     */
+    private void drain() {
+        IM m;
+        while (null != (m = _intake.poll())) {
+            // 添加时已判定成功，汇入前已处理成功的原料不再处理
+            if (0 == accept(m, _intake.lastTime())) discard(m);
+            if (_overflow == Overflow.DROP_OLDEST) {
+                int capacity = _capacity;
+                while (capacity > UNBOUNDED && _store.size() > capacity) {
+                    IM dropped = _store.drop();
+                    if (null == dropped) break;
+                    logFinish(dropped);
+                    discard(dropped);
+                    Logger.e(TAG, " apply 已满，丢弃:%s", dropped.material());
+                }
+            }
+        }
+    }
+
+    /**
+     * 按容量限制添加原料 需持有 _store 锁 且接收队列已汇入
+     *
+     * @param time 添加时间
+     */
+    private int offer(IM m, long time) {
+        int capacity = _capacity;
+        // 已在列表中的原料 重新添加不占用容量
+        if (capacity > UNBOUNDED && _store.size() >= capacity && !_store.contains(m)) {
+            switch (_overflow) {
+                case REJECT:
+                    logFinish(m);
+                    Logger.e(TAG, " apply 已满，拒绝:%s", m.material());
+                    return 0;
+                case DROP_OLDEST:
+                    IM dropped = _store.drop();
+                    if (null != dropped) {
+                        logFinish(dropped);
+                        discard(dropped);
+                    }
+                    Logger.e(TAG, " apply 已满，丢弃:%s", null == dropped ? null : dropped.material());
+                    break;
+                default:
+                    // 批量添加时 尚未触发轮训
+                    loopNext(_delay);
+                    try {
+                        // 添加方可能是共享线程池中的上道工序 阻塞时补偿线程
+                        ForkJoinPool.managedBlock(spaceBlocker);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        logFinish(m);
+                        return 0;
+                    }
+                    if (_released) return 0;
+                    break;
+            }
+        }
+        return accept(m, time);
+    }
+
+    /**
+     * 原料列表有空余 唤醒阻塞的添加方 需持有 _store 锁
+     */
+    private void signalSpace() {
+        if (_capacity > UNBOUNDED) {
+            _store.notifyAll();
+        }
+    }
+
+    @Override
+    public IM next() {
+        synchronized (_store) {
+            drain();
+            return _store.peek();
+        }
+    }
+
+    @Override
+    public boolean remove(IM material) {
+        synchronized (_store) {
+            drain();
+            boolean removed = _store.remove(material);
+            if (removed) {
+                logFinish(material);
+                discard(material);
+            }
+            signalSpace();
+            return removed;
+        }
+    }
+
+    @Override
+    public void clear() {
+        synchronized (_store) {
+            // 丢弃接收队列中的原料
+            int left = _store.size() + _store.retryCount();
+            while (null != _intake.poll()) left++;
+            _store.clear();
+            if (left > 0) onLeave(left);
+            IJournal<IM> journal = _journal;
+            if (null != journal) journal.clear(index);
+            signalSpace();
+        }
+    }
+
+    /**
+     * 轮训下一个 不影响添加操作
+     *
+     * @param delay 延迟时间
+     */
+    @Override
+    public void loopNext(long delay) {
+        if (delay < MIN_DELAY) delay = MIN_DELAY;
+        scheduler.cancel(loopTask);
+        if (_pause) {
+            return;
+        }
+        scheduler.schedule(loopTask, delay);
+        if (!autoLoopNext && Logger.isDebug()) {
+            if (index == 0) {
+                Logger.e(TAG, "****************** 分发原料 *************************************");
+            }
+            Logger.e(TAG, " loopNext ");
+        }
+    }
+
+    public void resumeLoop() {
+        _pause = false;
+        Logger.e(TAG, " resume inFlight = %s", _inFlight.get());
+        loopNext(_delay);
+    }
+
+    @Override
+    public void pauseLoop() {
+        _pause = true;
+        // 移除调度
+        scheduler.cancel(loopTask);
+        if (Logger.isDebug()) {
+            Logger.e(TAG, " pause inFlight = " + _inFlight.get());
+            //暂停时的处理结果 注意暂停时 原料中可能会有未处理原料 total == success + error + material
+            synchronized (_store) {
+                Logger.e(TAG, " pause ：error " + _store.errorCount() + " success = " + _store.successCount() + " material = " + _store.size());
+            }
+        }
+    }
+
+    @Override
+    public void release() {
+        _released = true;
+        // 释放不清空日志 待处理原料在下次设置日志时恢复
+        _journal = null;
+        synchronized (_store) {
+            _store.notifyAll();
+        }
+        clear();
+        scheduler.cancel(loopTask);
+        scheduler.cancel(retryTask);
+        scheduler.cancel(reportTask);
+        scheduler.release();
+        synchronized (this) {
+            if (null != workers) {
+                workers.shutdown();
+                workers = null;
+            }
+        }
+    }
+
+    /**
+     * 轮训线程分发原料：
+     * 并行数为1 在当前线程连续处理至多 LOOP_BURST 个原料后让出线程；
+     * 否则启动工作循环直至达到并行数，工作循环自行弹出原料处理，直至原料列表为空。
+     */
+    private void dispatch() {
+        settleAsync();
+        int concurrency = autoLoopNext ? _concurrency : 1;
+        boolean batch = autoLoopNext && _batchSize > 1;
+        if (concurrency == 1) {
+            long now = System.nanoTime();
+            for (int i = 0; i < LOOP_BURST; i++) {
+                // 并行数调小时 等待处理中的任务完成
+                if (_pause || _workers.get() > 0) return;
+                int state = runOnce(batch, now);
+                now = served(state, now);
+                if (state == EMPTY || state == BLOCKED) {
+                    if (isIdle()) onComplete();
+                    return;
+                }
+                // 等待凑批或令牌 已延迟轮训；异步处理未完成数已满 由完成的结果触发轮训
+                if (state == WAITING || state == THROTTLED || state == SATURATED) return;
+                // 接收队列有未汇入的原料 重试
+                if (state == RETRY) continue;
+                // 非自动轮训 一次处理一个；处理未完成 停止轮训
+                if (!autoLoopNext || state == STALLED) return;
+                if (_delay > MIN_DELAY) break;
+            }
+            loopNext(_delay);
+            return;
+        }
+        while (!_pause && _workers.get() < concurrency && ready() > 0) {
+            _workers.incrementAndGet();
+            workers(concurrency).execute(workerLoop);
+        }
+        if (isIdle()) {
+            onComplete();
+        }
+    }
+
+    /**
+     * 工作循环：弹出原料并处理 直至原料列表为空、暂停或并行数调小；
+     * 连续处理至多 LOOP_BURST 个原料后让出线程，由轮训线程补充工作循环，工作线程共享时不独占
+     */
+    private void work() {
+        int state = EMPTY;
+        try {
+            boolean batch = _batchSize > 1;
+            long now = System.nanoTime();
+            for (int i = 0; i < LOOP_BURST && !_pause && _workers.get() <= _concurrency; i++) {
+                state = runOnce(batch, now);
+                now = served(state, now);
+                if ((state != DONE && state != STARTED) || _delay > MIN_DELAY) break;
+            }
+        } finally {
+            _workers.decrementAndGet();
+        }
+        // 检查是否处理完毕 或补充工作循环；处理未完成 停止轮训；等待凑批或令牌 已延迟轮训；异步处理未完成数已满 由完成的结果触发轮训
+        if (state == STALLED || state == WAITING || state == THROTTLED || state == SATURATED) return;
+        // 分区被占用：由处理中的任务完成后继续弹出，或由到期的重试触发轮训，避免空转
+        if (state == BLOCKED && (_inFlight.get() > 0 || _store.retryCount() > 0)) return;
+        loopNext(_delay);
+    }
+
+    /**
+     * 弹出并处理一个原料或一批原料
+     * 先计入处理中再弹出，保证 isIdle() 不会在弹出与处理之间误判
+     *
+     * 添加方在弹出期间写入接收队列时，可能因处理中的任务数已达并行数而未触发轮训，此时返回 RETRY 由调用方重试
+     *
+     * @param now 弹出时间 用于统计排队耗时，并作为处理耗时的起点
+     * @return EMPTY：无可处理原料 WAITING：等待凑批 RETRY：接收队列有未汇入的原料 BLOCKED：原料所属分区均被占用
+     * THROTTLED：熔断或令牌不足 已延迟轮训或等待半开的试探完成 SATURATED：异步处理未完成数已满
+     * DONE：处理完成 STALLED：处理未完成 STARTED：已发起异步处理
+     */
+    private int runOnce(boolean batch, long now) {
+        // 先流转已完成的异步结果
+        settleAsync();
+        int async = autoLoopNext && !batch ? _async : 0;
+        if (async > 0 && _outstanding.get() >= async) {
+            return ready() == 0 ? unavailable() : SATURATED;
+        }
+        // 熔断时不弹出 原料在列表中等待；一批原料为一次处理
+        CircuitBreaker breaker = _breaker;
+        if (null != breaker) {
+            long wait = breaker.acquire();
+            if (wait != 0) {
+                if (ready() == 0) return unavailable();
+                if (wait > 0) loopNext(wait);
+                return THROTTLED;
+            }
+        }
+        // 先取令牌再弹出 未弹出的原料归还令牌
+        RateLimiter limiter = _limiter;
+        int permits = batch ? _batchSize : 1;
+        if (null != limiter) {
+            long wait = limiter.acquire(permits);
+            if (wait > 0) {
+                if (null != breaker) breaker.release();
+                if (ready() == 0) return unavailable();
+                loopNext((wait + 999999) / 1000000);
+                return THROTTLED;
+            }
+        }
+        _inFlight.incrementAndGet();
+        boolean processed = false;
+        if (batch) {
+            List<IM> materials = popBatch(now);
+            if (null == materials) {
+                _inFlight.decrementAndGet();
+                release(breaker, limiter, permits);
+                if (_batchDeadline != 0) return WAITING;
+                return unavailable();
+            }
+            if (null != limiter && materials.size() < permits) limiter.release(permits - materials.size());
+            try {
+                processed = processBatch(materials);
+            } finally {
+                synchronized (_store) {
+                    for (int i = 0; i < materials.size(); i++) {
+                        _store.finish(materials.get(i));
+                    }
+                }
+                _inFlight.decrementAndGet();
+            }
+        } else {
+            IM material = pop(now);
+            if (null == material) {
+                _inFlight.decrementAndGet();
+                release(breaker, limiter, 1);
+                return unavailable();
+            }
+            if (async > 0) {
+                boolean started = false;
+                try {
+                    started = processAsync(material, now);
+                } finally {
+                    // 已发起的 完成后移出处理中
+                    if (!started) {
+                        synchronized (_store) {
+                            _store.finish(material);
+                        }
+                        _inFlight.decrementAndGet();
+                    }
+                }
+                return started ? STARTED : DONE;
+            }
+            try {
+                processed = process(material);
+            } finally {
+                synchronized (_store) {
+                    _store.finish(material);
+                }
+                _inFlight.decrementAndGet();
+            }
+        }
+        return processed ? DONE : STALLED;
+    }
+
+    /**
+     * 未处理时归还试探及令牌
+     */
+    private static void release(CircuitBreaker breaker, RateLimiter limiter, int permits) {
+        if (null != breaker) breaker.release();
+        if (null != limiter) limiter.release(permits);
+    }
+
+    /**
+     * 未弹出原料时的结果
+     */
+    private int unavailable() {
+        if (!_intake.isEmpty()) return RETRY;
+        return _store.size() > 0 ? BLOCKED : EMPTY;
+    }
+
+    /**
+     * 记录处理耗时 循环内每个任务只取一次时间：本次处理完毕的时间即下次弹出的时间
+     *
+     * @param start 弹出时间
+     * @return 当前时间
+     */
+    private long served(int state, long start) {
+        long now = System.nanoTime();
+        if (state == DONE || state == STALLED) {
+            metrics.serviceTime.record((now - start) / 1000);
+        }
+        return now;
+    }
+
+    /**
+     * 弹出一批原料：原料数未达批量数且未超时，延迟到截止时间再轮训
+     *
+     * @return null：原料为空或等待凑批
+     */
+    private List<IM> popBatch(long time) {
+        long now = time / 1000000;
+        long wait = 0;
+        synchronized (_store) {
+            drain();
+            int size = _store.size();
+            if (size == 0) {
+                _batchDeadline = 0;
+                return null;
+            }
+            if (size < _batchSize) {
+                if (_batchDeadline == 0) _batchDeadline = now + _batchTimeout;
+                wait = _batchDeadline - now;
+            }
+            if (wait <= 0) {
+                _batchDeadline = 0;
+                List<IM> materials = _store.poll(_batchSize, time);
+                signalSpace();
+                return materials.isEmpty() ? null : materials;
+            }
+        }
+        loopNext(wait);
+        return null;
+    }
+
+    private synchronized Executor workers(int concurrency) {
+        Executor shared = scheduler.workers();
+        if (null != shared) return shared;
+        if (null == workers) {
+            workers = new ThreadPoolExecutor(concurrency, concurrency, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private int count;
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    return new Thread(r, TAG + "-worker-" + (count++));
+                }
+            });
+            workers.allowCoreThreadTimeOut(true);
+        }
+        return workers;
+    }
+
+    /**
+     * 处理中的任务数
+     */
+    int inFlight() {
+        return _inFlight.get();
+    }
+
+    /**
+     * 原料列表为空 且无处理中的原料
+     */
+    private boolean isIdle() {
+        return _inFlight.get() == 0 && count() == 0;
+    }
+
+    /**
+     * 弹出一个可用的最早添加原料，并标记为处理中
+     */
+    protected IM pop() {
+        return pop(System.nanoTime());
+    }
+
+    /**
+     * @param now 弹出时间
+     */
+    private IM pop(long now) {
+        synchronized (_store) {
+            drain();
+            IM material = _store.poll(now);
+            signalSpace();
+            return material;
+        }
+    }
+
+    protected void add(IM material) {
+        synchronized (_store) {
+            _store.offer(material);
+        }
+    }
+
+    /**
+     * 处理原料
+     *
+     * @return 是否处理完成 onProcess返回null 视为未完成
+     */
+    protected boolean process(IM material) {
+        if (expire(material)) {
+            unprobed();
+            return true;
+        }
+        if (hit(material)) {
+            unprobed();
+            // 非自动轮训 同处理完成
+            if (!autoLoopNext && count() == 0) onComplete();
+            return true;
+        }
+        // try count +1
+        material.setCount(material.getCount() + 1);
+        metrics.processed.incrementAndGet();
+        long start = System.nanoTime();
+        Attempt attempt = attempt(material.deadline());
+        IM result = null;
+        boolean timedOut = false;
+        RuntimeException error = null;
+        try {
+            result = onProcess(material);
+        } catch (RuntimeException e) {
+            // 取消引起的异常 按超时处理
+            if (null == attempt || !attempt.cancelled) error = e;
+        } finally {
+            if (null != attempt) timedOut = attempt.finish();
+        }
+        if (null != error) {
+            // 出错视为一次失败的尝试 不中断轮训
+            Logger.e(TAG, " process 出错:%s", error);
+            adapt(start, false);
+            fail(material, error.toString());
+            if (!autoLoopNext && count() == 0) onComplete();
+            return true;
+        }
+        return complete(material, result, start, timedOut);
+    }
+
+    /**
+     * 流转处理结果
+     *
+     * @param result   处理结果
+     * @param start    开始处理的时间
+     * @param timedOut 是否已超时取消
+     * @return 是否处理完成 结果为null 视为未完成
+     */
+    private boolean complete(IM material, IM result, long start, boolean timedOut) {
+        if (timedOut) {
+            metrics.timedOut.incrementAndGet();
+            Logger.e(TAG, " process 超时:%s", material.material());
+        }
+        if (timedOut && (null == result || result.state())) {
+            // 取消后未返回失败结果 视为失败的尝试
+            adapt(start, false);
+            fail(material, TIMEOUT);
+        } else {
+            adapt(start, null != result && result.state());
+            if (null == result) {
+                Logger.e(TAG, " The Result for onProcess() is Null !");
+                discard(material);
+                return false;
+            }
+            if (result.state()) remember(material, result);
+            boolean settled = settle(material, result, timedOut ? TIMEOUT : null);
+            try {
+                onAfterProcess(material, result);
+            } finally {
+                // 流转下道工序后 再记录离开本工序
+                if (settled) {
+                    logFinish(material);
+                    onLeave(1);
+                }
+            }
+        }
+        // TODO: 2021/5/12 fix：onComplete问题
+        if (!autoLoopNext) {
+            // 非自动轮训，不会走的null的判断
+            if (count() == 0) {
+                onComplete();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 异步处理原料：发起处理后即返回，完成的结果加入完成队列，由轮训线程流转；
+     * 超时或到达截止时间时按失败的尝试流转，之后的结果忽略
+     *
+     * @param start 弹出时间
+     * @return 是否已发起 false：已过截止时间或命中结果缓存 已处理完毕
+     */
+    private boolean processAsync(IM material, long start) {
+        if (expire(material) || hit(material)) {
+            unprobed();
+            return false;
+        }
+        material.setCount(material.getCount() + 1);
+        metrics.processed.incrementAndGet();
+        Promise promise = new Promise(material, start);
+        _outstanding.incrementAndGet();
+        long timeout = timeout(material.deadline());
+        if (timeout > 0) {
+            ScheduledFuture<?> future = watchdog().schedule(promise, timeout, TimeUnit.MILLISECONDS);
+            synchronized (promise) {
+                promise.future = future;
+            }
+        }
+        try {
+            onProcessAsync(material, promise);
+        } catch (RuntimeException e) {
+            promise.fail(e);
+        }
+        return true;
+    }
+
+    /**
+     * 流转已完成的异步结果 并移出处理中
+     */
+    private void settleAsync() {
+        Promise promise;
+        while (null != (promise = _completed.poll())) {
+            IM material = promise.material;
+            try {
+                if (null != promise.error) {
+                    Logger.e(TAG, " processAsync 出错:%s", promise.error);
+                    adapt(promise.start, false);
+                    fail(material, promise.error.toString());
+                } else {
+                    complete(material, promise.result, promise.start, promise.timedOut);
+                }
+            } catch (RuntimeException e) {
+                Logger.e(TAG, " settleAsync :%s", e);
+            } finally {
+                synchronized (_store) {
+                    _store.finish(material);
+                }
+                metrics.serviceTime.record((System.nanoTime() - promise.start) / 1000);
+                _outstanding.decrementAndGet();
+                _inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 批量处理原料
+     *
+     * @return 是否处理完成 onProcessBatch返回的结果与原料不对应 视为未完成
+     */
+    protected boolean processBatch(List<IM> materials) {
+        // 跳过已过截止时间及命中结果缓存的原料 处理中集合由调用方按原列表移出
+        List<IM> batch = materials;
+        long deadline = 0;
+        for (int i = 0; i < materials.size(); i++) {
+            IM material = materials.get(i);
+            if (expire(material) || hit(material)) {
+                if (batch == materials) batch = new ArrayList<>(materials.subList(0, i));
+                continue;
+            }
+            if (batch != materials) batch.add(material);
+            long due = material.deadline();
+            if (due > 0 && (deadline == 0 || due < deadline)) deadline = due;
+        }
+        materials = batch;
+        int size = materials.size();
+        if (size == 0) {
+            unprobed();
+            return true;
+        }
+        for (int i = 0; i < size; i++) {
+            IM material = materials.get(i);
+            material.setCount(material.getCount() + 1);
+        }
+        metrics.processed.addAndGet(size);
+        long start = System.nanoTime();
+        Attempt attempt = attempt(deadline);
+        List<IM> results = null;
+        boolean timedOut = false;
+        RuntimeException error = null;
+        try {
+            results = onProcessBatch(materials);
+        } catch (RuntimeException e) {
+            if (null == attempt || !attempt.cancelled) error = e;
+        } finally {
+            if (null != attempt) timedOut = attempt.finish();
+        }
+        if (null != error) {
+            // 出错视为整批原料的一次失败尝试 不中断轮训
+            Logger.e(TAG, " processBatch 出错:%s", error);
+            adapt(start, false);
+            for (int i = 0; i < size; i++) {
+                fail(materials.get(i), error.toString());
+            }
+            return true;
+        }
+        if (timedOut) {
+            metrics.timedOut.addAndGet(size);
+            Logger.e(TAG, " processBatch 超时:%s", size);
+            results = cancel(materials, results);
+        }
+        adapt(start, !timedOut && succeeded(results, size));
+        if (null == results || results.size() != size) {
+            Logger.e(TAG, " The Result for onProcessBatch() is Invalid !");
+            for (int i = 0; i < size; i++) discard(materials.get(i));
+            return false;
+        }
+        boolean[] settled = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            IM result = results.get(i);
+            if (null == result) {
+                // 超时的原料已按失败处理
+                if (timedOut) continue;
+                Logger.e(TAG, " The Result for onProcessBatch() is Null :%s", materials.get(i).material());
+                discard(materials.get(i));
+                continue;
+            }
+            if (result.state()) remember(materials.get(i), result);
+            settled[i] = settle(materials.get(i), result, timedOut ? TIMEOUT : null);
+        }
+        try {
+            onAfterProcessBatch(materials, results);
+        } finally {
+            // 流转下道工序后 再记录离开本工序
+            int left = 0;
+            for (int i = 0; i < size; i++) {
+                if (settled[i]) {
+                    logFinish(materials.get(i));
+                    left++;
+                }
+            }
+            if (left > 0) onLeave(left);
+        }
+        return true;
+    }
+
+    /**
+     * 一批原料处理超时：保留取消后返回的失败结果，其余原料视为失败的尝试，结果置为null
+     */
+    private List<IM> cancel(List<IM> materials, List<IM> results) {
+        boolean valid = null != results && results.size() == materials.size();
+        List<IM> kept = new ArrayList<>(materials.size());
+        for (int i = 0; i < materials.size(); i++) {
+            IM result = valid ? results.get(i) : null;
+            if (null == result || result.state()) {
+                fail(materials.get(i), TIMEOUT);
+                result = null;
+            }
+            kept.add(result);
+        }
+        return kept;
+    }
+
+    /**
+     * 命中结果缓存时不调用 onProcess：缓存结果的副本按成功流转下道工序
+     *
+     * @return 是否命中
+     */
+    private boolean hit(IM material) {
+        IResultCache<IM> cache = _cache;
+        if (null == cache) return false;
+        IM cached = cache.get(material.key());
+        if (null == cached) {
+            metrics.cacheMisses.incrementAndGet();
+            return false;
+        }
+        metrics.cacheHits.incrementAndGet();
+        Logger.e(TAG, " process 命中缓存:%s", material.material());
+        IM result = fork(cached);
+        result.setCount(0);
+        settle(material, result, null);
+        try {
+            onAfterProcess(material, result);
+        } finally {
+            logFinish(material);
+            onLeave(1);
+        }
+        return true;
+    }
+
+    /**
+     * 复制结果缓存的结果：写入及命中时各复制一次，缓存的实例不随流转被修改
+     * 默认复制 Material（不含尝试次数），其他实现原样返回，需分别流转的重写
+     */
+    protected IM fork(IM result) {
+        return copy(result);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <IM extends IMaterial> IM copy(IM result) {
+        if (null == result || result.getClass() != Material.class) return result;
+        Material<?> m = (Material<?>) result;
+        Material<?> copy = new Material<>(m.material(), m.state(), m.priority());
+        copy.setDeadline(m.deadline());
+        return (IM) copy;
+    }
+
+    /**
+     * 缓存处理成功的结果
+     */
+    private void remember(IM material, IM result) {
+        IResultCache<IM> cache = _cache;
+        if (null != cache) cache.put(material.key(), fork(result));
+    }
+
+    /**
+     * 放行的处理因原料已过截止时间或命中结果缓存未进行 归还半开的试探
+     */
+    private void unprobed() {
+        CircuitBreaker breaker = _breaker;
+        if (null != breaker) breaker.release();
+    }
+
+    /**
+     * 已过截止时间的原料不处理：记录失败 离开工序
+     *
+     * @return 是否已过截止时间
+     */
+    private boolean expire(IM material) {
+        long deadline = material.deadline();
+        if (deadline <= 0 || deadline > System.currentTimeMillis()) return false;
+        synchronized (_store) {
+            _store.error(material);
+        }
+        metrics.failed.incrementAndGet();
+        Logger.e(TAG, " process 已过截止时间:%s", material.material());
+        onError(material, DEADLINE);
+        logFinish(material);
+        discard(material);
+        return true;
+    }
+
+    /**
+     * 无失败结果的失败尝试（超时、出错）：按失败重试，达最大尝试次数时记录失败 离开工序
+     *
+     * @param cause 失败原因
+     */
+    private void fail(IM material, String cause) {
+        if (settle(material, null, cause)) {
+            logFinish(material);
+            discard(material);
+        }
+    }
+
+    /**
+     * 开始一次处理尝试：按工序超时及截止时间中较早的到期取消
+     *
+     * @param deadline 原料截止时间 0：无
+     * @return null：不限时
+     */
+    private Attempt attempt(long deadline) {
+        long timeout = timeout(deadline);
+        if (timeout <= 0) return null;
+        Attempt attempt = new Attempt();
+        attempt.future = watchdog().schedule(attempt, timeout, TimeUnit.MILLISECONDS);
+        return attempt;
+    }
+
+    /**
+     * 工序超时及截止时间中较早的到期时间
+     *
+     * @param deadline 原料截止时间 0：无
+     * @return 毫秒 0：不限时
+     */
+    private long timeout(long deadline) {
+        long timeout = _timeout;
+        if (deadline > 0) {
+            long left = Math.max(1, deadline - System.currentTimeMillis());
+            timeout = timeout > 0 ? Math.min(timeout, left) : left;
+        }
+        return timeout;
+    }
+
+    private static synchronized ScheduledThreadPoolExecutor watchdog() {
+        if (null == watchdog) {
+            watchdog = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Procedurer-watchdog");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            // 按时完成的尝试 取消后立即移出
+            watchdog.setRemoveOnCancelPolicy(true);
+        }
+        return watchdog;
+    }
+
+    /**
+     * 当前线程正在进行的处理是否已超时取消，onProcess 中检查后提前返回
+     */
+    public static boolean isCancelled() {
+        Attempt attempt = ATTEMPT.get();
+        return null != attempt && attempt.cancelled;
+    }
+
+    /**
+     * 一次处理尝试：到期时标记取消并中断处理线程；处理结束后不再中断，并清除取消引起的中断状态
+     */
+    private static final class Attempt implements Runnable {
+        private final Thread thread = Thread.currentThread();
+        // 融合的工序在上道工序的处理线程上嵌套处理
+        private final Attempt previous = ATTEMPT.get();
+        private volatile boolean cancelled;
+        private boolean finished;
+        private ScheduledFuture<?> future;
+
+        Attempt() {
+            ATTEMPT.set(this);
+        }
+
+        @Override
+        public synchronized void run() {
+            if (finished) return;
+            cancelled = true;
+            thread.interrupt();
+        }
+
+        /**
+         * @return 是否已超时取消
+         */
+        synchronized boolean finish() {
+            finished = true;
+            if (null != future) future.cancel(false);
+            if (cancelled) Thread.interrupted();
+            if (null == previous) {
+                ATTEMPT.remove();
+            } else {
+                ATTEMPT.set(previous);
+            }
+            return cancelled;
+        }
+    }
+
+    /**
+     * 一次异步处理：完成、出错或到期仅取首次，加入完成队列并触发轮训
+     */
+    private final class Promise implements IPromise<IM>, Runnable {
+        final IM material;
+        // 弹出时间
+        final long start;
+        IM result;
+        Throwable error;
+        volatile boolean timedOut;
+        private boolean done;
+        private ScheduledFuture<?> future;
+
+        Promise(IM material, long start) {
+            this.material = material;
+            this.start = start;
+        }
+
+        @Override
+        public void complete(IM result) {
+            resolve(result, null, false);
+        }
+
+        @Override
+        public void fail(Throwable e) {
+            resolve(null, null == e ? new IllegalStateException("failed") : e, false);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return timedOut;
+        }
+
+        /**
+         * 到期
+         */
+        @Override
+        public void run() {
+            resolve(null, null, true);
+        }
+
+        private void resolve(IM result, Throwable error, boolean timedOut) {
+            synchronized (this) {
+                if (done) return;
+                done = true;
+                this.result = result;
+                this.error = error;
+                this.timedOut = timedOut;
+                if (null != future && !timedOut) future.cancel(false);
+            }
+            if (_released) return;
+            _completed.offer(this);
+            loopNext(_delay);
+        }
+    }
+
+    /**
+     * 一批原料是否全部处理成功
+     */
+    private boolean succeeded(List<IM> results, int size) {
+        if (null == results || results.size() != size) return false;
+        for (int i = 0; i < size; i++) {
+            IM result = results.get(i);
+            if (null == result || !result.state()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 根据处理结果 记录成功、失败或重新加入原料列表待重试
+     *
+     * @param result 处理结果 超时未返回失败结果时为null
+     * @param cause  失败原因 null：按结果判定
+     * @return true：原料离开本工序（成功或达最大尝试次数） false：待重试
+     */
+    private boolean settle(IM material, IM result, String cause) {
+        if (null == cause && result.state()) {// 成功
+            // 移出error列表 添加success列表
+            synchronized (_store) {
+                _store.success(material);
+            }
+            metrics.succeeded.incrementAndGet();
+            Logger.e(TAG, " process 成功:%s", material.material());
+        } else {// 出现异常
+            if (material.getCount() < _maxTry) {
+                metrics.retried.incrementAndGet();
+                long delay = _retryPolicy.delay(material.getCount());
+                if (delay > 0) {
+                    // 移入待重试队列 到期后再加入原料列表
+                    retry(material, delay);
+                    Logger.e(TAG, " process 异常，%sms后重试:%s", delay, material.material());
+                    return false;
+                }
+                // 还可重试，重新加入原料列表的最后
+                add(material);
+                Logger.e(TAG, " process 异常，待重试:%s", material.material());
+                // TODO: 2021/5/12 fix：onComplete问题
+                if (!autoLoopNext) {
+                    loopNext(_delay);
+                }
+                return false;
+            } else {// 不可尝试 添加error列表
+                synchronized (_store) {
+                    _store.error(material);
+                }
+                metrics.failed.incrementAndGet();
+                Logger.e(TAG, " process 错误:%s", material.material());
+                onError(material, null != cause ? cause : String.valueOf(result));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 加入待重试队列，到期时间早于已调度的重试时 重新调度重试任务
+     */
+    private void retry(IM material, long delay) {
+        long now = System.nanoTime() / 1000000;
+        synchronized (_store) {
+            _store.delay(material, now + delay);
+            // 持锁调度 保证并行加入时按最早到期时间调度
+            if (_store.nextRetry() == now + delay) {
+                scheduler.schedule(retryTask, delay);
+            }
+        }
+    }
+
+    /**
+     * 到期的待重试原料移入原料列表，并调度下一个到期时间
+     */
+    private void promote() {
+        long now = System.nanoTime() / 1000000;
+        int count;
+        synchronized (_store) {
+            count = _store.promote(now);
+            long next = _store.nextRetry();
+            if (next >= 0) {
+                scheduler.schedule(retryTask, next - now);
+            }
+        }
+        if (count > 0) {
+            loopNext(_delay);
+        }
+    }
+
+    @Override
+    public IProcessStatus<IM, M> getProcessStatus() {
+        synchronized (_store) {
+            drain();
+            // 处理中的原料 尚未计入成功、失败集合
+            int total = _store.errorCount() + _store.successCount() + _store.size() + _store.runningCount()
+                    + _store.retryCount();
+            return new ProcessStatus(_store.errors(), total);
+        }
+    }
+
+    protected void onAfterProcess(IM material, IM result) {
+    }
+
+    /**
+     * 原料进入工序前回调，此后原料才可被处理
+     *
+     * @param count 原料数
+     */
+    protected void onEnter(int count) {
+    }
+
+    /**
+     * 原料离开工序后回调，成功的结果已流转下道工序
+     *
+     * @param count 原料数
+     */
+    protected void onLeave(int count) {
+    }
+
+    /**
+     * 原料处理失败离开工序前回调：达最大尝试次数、已过截止时间或处理出错（随后回调 onDiscard）
+     *
+     * @param cause 最后一次失败的原因：处理失败的结果、异常、timeout 或 deadline
+     */
+    protected void onError(IM material, String cause) {
+    }
+
+    /**
+     * 已添加的原料未经处理离开工序（丢弃、移除、汇入前已成功、处理出错或结果为null），随后回调 onLeave
+     * 清空不逐个回调
+     */
+    protected void onDiscard(IM material) {
+    }
+
+    /**
+     * 批量处理后回调 默认逐个回调 onAfterProcess
+     *
+     * @param results 与原料一一对应的处理结果 可能包含null
+     */
+    protected void onAfterProcessBatch(List<IM> materials, List<IM> results) {
+        for (int i = 0; i < materials.size(); i++) {
+            IM result = results.get(i);
+            if (null != result) {
+                onAfterProcess(materials.get(i), result);
+            }
+        }
+    }
+
+    /**
+     * 默认逐个回调 onProcess
+     */
+    @Override
+    public List<IM> onProcessBatch(List<IM> materials) {
+        List<IM> results = new ArrayList<>(materials.size());
+        for (int i = 0; i < materials.size(); i++) {
+            results.add(onProcess(materials.get(i)));
+        }
+        return results;
+    }
+
+    /**
+     * 默认同步回调 onProcess 后完成
+     */
+    @Override
+    public void onProcessAsync(IM material, IPromise<IM> promise) {
+        promise.complete(onProcess(material));
+    }
+
+    @Override
+    public void onComplete() {
+    }
+
+    @Override
+    public abstract IM onProcess(IM material);
+}
@@ -3,7 +3,6 @@ package com.looper.core;
 import com.looper.interfaces.IMaterial;
 import com.looper.interfaces.IProcessStatus;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -16,11 +15,14 @@ public class ProcessStatus<IM extends IMaterial<M>, M> implements IProcessStatus
     private int total;
     private List<IM> errorMaterials;
 
+    /**
+     * @param errorMaterials 失败原料的只读快照 直接引用不拷贝
+     * @param total          原料总数
+     */
     protected ProcessStatus(List<IM> errorMaterials, int total) {
         this.error = errorMaterials.size();
         this.total = total;
-        this.errorMaterials = new ArrayList<>(error);
-        this.errorMaterials.addAll(errorMaterials);
+        this.errorMaterials = errorMaterials;
     }
 
     @Override
@@ -40,7 +42,6 @@ public class ProcessStatus<IM extends IMaterial<M>, M> implements IProcessStatus
 
     @Override
     public void release() {
-        errorMaterials.clear();
         errorMaterials = null;
     }
 
@@ -0,0 +1,67 @@
+package com.looper.core;
+
+/**
+ * 令牌桶限流：
+ * 1. 令牌按速率匀速补充，最多积累 burst 个，空闲后可突发处理 burst 个原料。
+ * 2. 令牌不少于1个时即可取用，批量取用可透支，透支的令牌由后续补充抵扣，长期速率不超过设定值。
+ * 3. 不阻塞取用方：令牌不足时返回需等待的时间，由调用方延迟轮训。
+ * 多个工作线程共用一个实例，速率可在运行中调整。
+ */
+public class RateLimiter {
+    // 每纳秒补充的令牌数
+    private double rate;
+    private int burst;
+    private double tokens;
+    // 上次补充的时间 System.nanoTime()
+    private long last;
+
+    /**
+     * @param permitsPerSecond 每秒令牌数
+     * @param burst            最多积累的令牌数 小于1时按1
+     */
+    public RateLimiter(double permitsPerSecond, int burst) {
+        last = System.nanoTime();
+        setRate(permitsPerSecond, burst);
+        tokens = this.burst;
+    }
+
+    /**
+     * 调整速率 已积累的令牌不超过新的 burst
+     */
+    public synchronized void setRate(double permitsPerSecond, int burst) {
+        refill(System.nanoTime());
+        this.rate = Math.max(permitsPerSecond, Double.MIN_VALUE) / 1e9;
+        this.burst = Math.max(1, burst);
+        tokens = Math.min(tokens, this.burst);
+    }
+
+    /**
+     * 尝试取用令牌：令牌不少于1个时取用 permits 个，不足部分透支
+     *
+     * @param permits 令牌数
+     * @return 0：已取用 否则为令牌补充到1个需等待的时间 纳秒
+     */
+    public synchronized long acquire(int permits) {
+        long now = System.nanoTime();
+        refill(now);
+        if (tokens >= 1) {
+            tokens -= permits;
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((1 - tokens) / rate));
+    }
+
+    /**
+     * 归还取用但未使用的令牌
+     */
+    public synchronized void release(int permits) {
+        tokens = Math.min(burst, tokens + permits);
+    }
+
+    private void refill(long now) {
+        if (now - last > 0) {
+            tokens = Math.min(burst, tokens + (now - last) * rate);
+            last = now;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.looper.core;
+
+import com.looper.interfaces.IMaterial;
+import com.looper.interfaces.IResultCache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * 常用结果缓存：按最久未命中（LRU）淘汰，可限定结果数或总权重，并按保留时间过期。
+ * 1. lru：结果数超过容量时淘汰。
+ * 2. weighted：结果的总权重超过上限时淘汰，单个结果的权重超过上限时不缓存。
+ * 过期的结果在读取时移出，未读取的随淘汰移出。
+ */
+public class ResultCache {
+
+    private ResultCache() {
+    }
+
+    /**
+     * @param capacity 最多缓存的结果数
+     * @param ttl      保留时间 毫秒，自缓存起计；小于等于0：不过期
+     */
+    public static <IM extends IMaterial> IResultCache<IM> lru(int capacity, long ttl) {
+        return new Lru<>(Math.max(1, capacity), null, ttl);
+    }
+
+    /**
+     * @param maxWeight 结果的最大总权重
+     * @param weigher   结果的权重
+     * @param ttl       保留时间 毫秒，自缓存起计；小于等于0：不过期
+     */
+    public static <IM extends IMaterial> IResultCache<IM> weighted(long maxWeight, IResultCache.Weigher<IM> weigher, long ttl) {
+        return new Lru<>(Math.max(1, maxWeight), weigher, ttl);
+    }
+
+    private static class Entry<IM> {
+        final IM result;
+        final int weight;
+        // 过期时间 System.nanoTime() 0：不过期
+        final long expireAt;
+
+        Entry(IM result, int weight, long expireAt) {
+            this.result = result;
+            this.weight = weight;
+            this.expireAt = expireAt;
+        }
+    }
+
+    private static class Lru<IM extends IMaterial> implements IResultCache<IM> {
+        private final long maxWeight;
+        private final IResultCache.Weigher<IM> weigher;
+        // 保留时间 纳秒
+        private final long ttl;
+        // 按访问顺序 最久未命中的在前
+        private final LinkedHashMap<Object, Entry<IM>> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long weight;
+
+        Lru(long maxWeight, IResultCache.Weigher<IM> weigher, long ttl) {
+            this.maxWeight = maxWeight;
+            this.weigher = weigher;
+            this.ttl = ttl > 0 ? ttl * 1000000 : 0;
+        }
+
+        @Override
+        public synchronized IM get(Object key) {
+            Entry<IM> entry = entries.get(key);
+            if (null == entry) return null;
+            if (entry.expireAt != 0 && entry.expireAt - System.nanoTime() <= 0) {
+                remove(key);
+                return null;
+            }
+            return entry.result;
+        }
+
+        @Override
+        public synchronized void put(Object key, IM result) {
+            int size = null == weigher ? 1 : Math.max(0, weigher.weigh(result));
+            remove(key);
+            if (size > maxWeight) return;
+            long expireAt = ttl == 0 ? 0 : Math.max(1, System.nanoTime() + ttl);
+            entries.put(key, new Entry<>(result, size, expireAt));
+            weight += size;
+            Iterator<Entry<IM>> it = entries.values().iterator();
+            while (weight > maxWeight) {
+                weight -= it.next().weight;
+                it.remove();
+            }
+        }
+
+        @Override
+        public synchronized void remove(Object key) {
+            Entry<IM> entry = entries.remove(key);
+            if (null != entry) weight -= entry.weight;
+        }
+
+        @Override
+        public synchronized int size() {
+            return entries.size();
+        }
+
+        @Override
+        public synchronized void clear() {
+            entries.clear();
+            weight = 0;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.looper.core;
+
+import com.looper.interfaces.IRetryPolicy;
+
+import java.util.Random;
+
+/**
+ * 常用重试策略：
+ * 1. IMMEDIATE：立即重新加入原料列表的最后（默认）。
+ * 2. fixed：固定间隔。
+ * 3. exponential：间隔按尝试次数指数增长，不超过最大间隔，并随机抖动，避免大量原料同时重试。
+ */
+public class RetryPolicy implements IRetryPolicy {
+    public static final IRetryPolicy IMMEDIATE = new RetryPolicy(0, 0, 0);
+
+    private static final Random RANDOM = new Random();
+
+    // 首次重试间隔
+    private final long base;
+    // 最大间隔 小于等于0：固定间隔
+    private final long max;
+    // 抖动比例 0~1
+    private final double jitter;
+
+    private RetryPolicy(long base, long max, double jitter) {
+        this.base = Math.max(0, base);
+        this.max = max;
+        this.jitter = Math.min(1, Math.max(0, jitter));
+    }
+
+    /**
+     * 固定间隔重试
+     *
+     * @param delay 间隔 毫秒
+     */
+    public static IRetryPolicy fixed(long delay) {
+        return new RetryPolicy(delay, 0, 0);
+    }
+
+    /**
+     * 指数退避重试：第n次尝试失败后等待 base * 2^(n-1)，不超过max
+     *
+     * @param base   首次重试间隔 毫秒
+     * @param max    最大间隔 毫秒
+     * @param jitter 抖动比例 0~1，实际间隔在 [delay * (1 - jitter), delay] 内随机
+     */
+    public static IRetryPolicy exponential(long base, long max, double jitter) {
+        return new RetryPolicy(base, Math.max(base, max), jitter);
+    }
+
+    @Override
+    public long delay(int count) {
+        long delay = base;
+        if (max > 0) {
+            // 防止移位溢出
+            int shift = Math.min(Math.max(count - 1, 0), 62);
+            delay = base << shift;
+            if (delay <= 0 || (delay >> shift) != base || delay > max) {
+                delay = max;
+            }
+        }
+        if (jitter > 0 && delay > 0) {
+            delay -= (long) (delay * jitter * RANDOM.nextDouble());
+        }
+        return delay;
+    }
+}
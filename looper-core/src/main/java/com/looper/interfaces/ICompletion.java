@@ -0,0 +1,58 @@
+package com.looper.interfaces;
+
+/**
+ * 单个原料在管道中的处理结果，由 IPipe.submit 返回
+ * 原料及其流转的结果（含广播的分支）均离开管道时完成：处理成功到达末道工序、达最大尝试次数、被丢弃或拒绝。
+ *
+ * @param <IM> IMaterial
+ */
+public interface ICompletion<IM extends IMaterial> {
+
+    /**
+     * 是否已完成
+     */
+    boolean isDone();
+
+    /**
+     * 最终结果：最后离开管道的结果，state() 为处理是否成功
+     *
+     * @return null：未完成，或原料未被添加、被丢弃、被拒绝、被清空
+     */
+    IM result();
+
+    /**
+     * 最终结果所在的工序索引
+     *
+     * @return -1：未完成或首道工序未添加
+     */
+    int index();
+
+    /**
+     * 最终结果所在工序的尝试次数
+     */
+    int attempts();
+
+    /**
+     * 等待完成
+     *
+     * @return 最终结果
+     */
+    IM await() throws InterruptedException;
+
+    /**
+     * 等待完成
+     *
+     * @param timeout 最长等待时间 毫秒
+     * @return 是否已完成
+     */
+    boolean await(long timeout) throws InterruptedException;
+
+    /**
+     * 添加完成监听，已完成时立即回调；在完成的工序线程上回调，不可耗时
+     */
+    void listen(Listener<IM> listener);
+
+    interface Listener<IM extends IMaterial> {
+        void onComplete(ICompletion<IM> completion);
+    }
+}
@@ -0,0 +1,23 @@
+package com.looper.interfaces;
+
+/**
+ * 自适应并行数：按每个任务（单个原料或一批原料）的处理耗时及结果，调整工序的并行数
+ * 工作线程并发回调，实现需线程安全；实例保存状态，不可与其他工序共用。
+ */
+public interface IConcurrencyLimit {
+
+    /**
+     * 初始并行数
+     */
+    int initial();
+
+    /**
+     * 任务处理完毕
+     *
+     * @param latency  处理耗时 微秒
+     * @param inFlight 处理中的任务数 含本任务
+     * @param success  是否处理成功，失败、出错或结果为null视为失败
+     * @return 调整后的并行数
+     */
+    int onSample(long latency, int inFlight, boolean success);
+}
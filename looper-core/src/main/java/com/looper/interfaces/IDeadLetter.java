@@ -0,0 +1,65 @@
+package com.looper.interfaces;
+
+import java.util.List;
+
+/**
+ * 管道的死信记录：保存处理失败离开管道的原料（达最大尝试次数、已过截止时间、处理出错），
+ * 及失败的工序、尝试次数、最后一次失败的原因，不随管道处理完毕清空，可按失败的工序重新添加（见 IPipe.replay）。
+ * 同一原料在同一工序再次失败时替换之前的记录。
+ * 管道的工序线程并发添加，实现需线程安全。
+ *
+ * @param <IM> IMaterial
+ */
+public interface IDeadLetter<IM extends IMaterial> {
+
+    void add(Entry<IM> entry);
+
+    /**
+     * 记录的快照 按失败顺序，包括写入文件的记录（见 DeadLetter.file）
+     */
+    List<Entry<IM>> entries();
+
+    /**
+     * 移出记录，仅移出同一次失败（失败时间相同）的记录，原料之后再次失败的记录保留
+     *
+     * @return 是否存在
+     */
+    boolean remove(Entry<IM> entry);
+
+    /**
+     * 记录数
+     */
+    int size();
+
+    void clear();
+
+    /**
+     * 死信记录
+     */
+    interface Entry<IM extends IMaterial> {
+        /**
+         * 失败工序的原料
+         */
+        IM material();
+
+        /**
+         * 失败的工序索引
+         */
+        int index();
+
+        /**
+         * 已尝试次数
+         */
+        int attempts();
+
+        /**
+         * 最后一次失败的原因：处理失败的结果、异常、超时（timeout）或已过截止时间（deadline）
+         */
+        String cause();
+
+        /**
+         * 失败时间 System.currentTimeMillis()
+         */
+        long time();
+    }
+}
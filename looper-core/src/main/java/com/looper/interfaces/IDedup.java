@@ -0,0 +1,28 @@
+package com.looper.interfaces;
+
+/**
+ * 成功原料的去重集合：记录处理成功的原料 key，重复添加已成功的原料时拒绝
+ * contains 可并发调用（添加方不加锁判定），其他方法由工序加锁调用。
+ * 有界实现在淘汰后允许重复处理，概率实现可能误判未处理的原料为已成功。
+ */
+public interface IDedup {
+
+    /**
+     * 是否已成功 可不加锁调用
+     */
+    boolean contains(Object key);
+
+    void add(Object key);
+
+    /**
+     * 移出成功集合（原料重新处理失败时），不支持删除的实现可忽略
+     */
+    void remove(Object key);
+
+    /**
+     * 记录的原料数 概率实现为添加次数的估计
+     */
+    int size();
+
+    void clear();
+}
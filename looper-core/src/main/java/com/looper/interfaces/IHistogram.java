@@ -0,0 +1,23 @@
+package com.looper.interfaces;
+
+/**
+ * 耗时分布 单位微秒
+ */
+public interface IHistogram {
+
+    /**
+     * 记录数
+     */
+    long count();
+
+    /**
+     * 百分位耗时，精度约 12.5%
+     *
+     * @param percentile 0~1，如 0.99
+     */
+    long percentile(double percentile);
+
+    long max();
+
+    double mean();
+}
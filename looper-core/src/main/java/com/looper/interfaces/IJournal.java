@@ -0,0 +1,52 @@
+package com.looper.interfaces;
+
+import java.util.List;
+
+/**
+ * 工序的预写日志：
+ * 1. 原料进入工序的原料列表前记录 apply，离开工序后记录 finish，进程重启后据此恢复各工序的待处理原料。
+ * 2. 流转下道工序时，先记录下道工序的 apply，再记录本道工序的 finish，进程在两者之间终止时原料会被重复处理（至少一次）。
+ * 3. 成功、失败集合不持久化。
+ *
+ * @param <IM> IMaterial
+ */
+public interface IJournal<IM extends IMaterial> {
+
+    /**
+     * 原料进入工序的原料列表
+     *
+     * @param index 工序索引
+     */
+    void apply(int index, IM material);
+
+    /**
+     * 原料离开工序：处理成功并已流转、达最大尝试次数、被移除或丢弃
+     *
+     * @param index 工序索引
+     */
+    void finish(int index, IM material);
+
+    /**
+     * 工序的原料列表已清空
+     *
+     * @param index 工序索引
+     */
+    void clear(int index);
+
+    /**
+     * 所有工序的原料列表已清空，丢弃日志
+     */
+    void reset();
+
+    /**
+     * 日志中工序的待处理原料，按进入顺序，每个工序仅返回一次
+     *
+     * @param index 工序索引
+     */
+    List<IM> recover(int index);
+
+    /**
+     * 刷盘并关闭日志
+     */
+    void close();
+}
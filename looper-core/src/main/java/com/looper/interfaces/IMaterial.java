@@ -0,0 +1,70 @@
+package com.looper.interfaces;
+
+/**
+ * 原料封装接口
+ * 工序中原料的去重（见 IProcedure.apply）基于 key() 的 equals/hashCode 判定，
+ * 实现类需保证 key() 在原料流转期间不变。
+ *
+ * @param <M>
+ */
+public interface IMaterial<M> {
+    /**
+     * 原料
+     */
+    M material();
+
+    /**
+     * 获取处理状态
+     *
+     * @return true：处理成功，false：处理失败
+     */
+    boolean state();
+
+    /**
+     * 设置当前尝试次数
+     *
+     * @param count
+     */
+    void setCount(int count);
+
+    /**
+     * 获取尝试次数
+     */
+    int getCount();
+
+    /**
+     * 原料唯一标识，用于工序中原料的哈希索引及去重
+     * 默认返回自身，即沿用实现类的 equals/hashCode
+     */
+    default Object key() {
+        return this;
+    }
+
+    /**
+     * 优先级，值越大越先处理，同优先级按添加顺序
+     * 处理结果流转下道工序时，优先级由结果决定，需保留优先级的由 onProcess 设置到结果
+     * 默认0
+     */
+    default int priority() {
+        return 0;
+    }
+
+    /**
+     * 分区键，工序分区时（见 IProcedure.setPartitions）同一分区键的原料依次处理
+     * 同一 key() 的原料需返回相同的分区键
+     * 默认返回 key()
+     */
+    default Object partitionKey() {
+        return key();
+    }
+
+    /**
+     * 截止时间 System.currentTimeMillis()，工序弹出时已过截止时间的原料不处理，视为处理失败；
+     * 处理中到达截止时间时取消处理（见 IProcedure.setTimeout）
+     * 处理结果流转下道工序时，截止时间由结果决定，需保留的由 onProcess 设置到结果
+     * 默认0：无截止时间
+     */
+    default long deadline() {
+        return 0;
+    }
+}
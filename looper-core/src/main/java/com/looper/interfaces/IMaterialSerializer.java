@@ -0,0 +1,14 @@
+package com.looper.interfaces;
+
+/**
+ * 原料序列化接口，用于日志持久化原料
+ * 反序列化的原料需与序列化前的原料 key() 相等。
+ *
+ * @param <IM> IMaterial
+ */
+public interface IMaterialSerializer<IM extends IMaterial> {
+
+    byte[] serialize(IM material);
+
+    IM deserialize(byte[] data);
+}
@@ -0,0 +1,68 @@
+package com.looper.interfaces;
+
+/**
+ * 工序的运行指标，可随时读取，不影响工序运行
+ * 计数自创建或 reset 起累计，队列深度及处理中任务数为读取时的当前值。
+ */
+public interface IMetrics {
+
+    /**
+     * 处理次数 含重试
+     */
+    long processed();
+
+    /**
+     * 处理成功的原料数
+     */
+    long succeeded();
+
+    /**
+     * 达最大尝试次数 处理失败的原料数
+     */
+    long failed();
+
+    /**
+     * 处理失败待重试的次数
+     */
+    long retried();
+
+    /**
+     * 处理超时被取消的次数 含重试
+     */
+    long timedOut();
+
+    /**
+     * 结果缓存命中次数 未设置结果缓存时为0（见 IProcedure.setResultCache）
+     */
+    long cacheHits();
+
+    /**
+     * 结果缓存未命中次数 含重试，命中率 = cacheHits / (cacheHits + cacheMisses)
+     */
+    long cacheMisses();
+
+    /**
+     * 当前待处理原料数 见 IProcedure.count()
+     */
+    int queueDepth();
+
+    /**
+     * 当前处理中的任务数（单个原料或一批原料）
+     */
+    int inFlight();
+
+    /**
+     * 处理耗时：一个原料或一批原料从弹出到处理完毕（含流转下道工序）的耗时
+     */
+    IHistogram serviceTime();
+
+    /**
+     * 排队耗时：原料添加到弹出处理的耗时
+     */
+    IHistogram queueWait();
+
+    /**
+     * 清零计数及耗时分布
+     */
+    void reset();
+}
@@ -0,0 +1,13 @@
+package com.looper.interfaces;
+
+/**
+ * 运行指标监听，按设置的间隔在工序的轮训线程上回调，用于导出指标
+ */
+public interface IMetricsListener {
+
+    /**
+     * @param index   工序索引
+     * @param metrics 工序的运行指标
+     */
+    void onMetrics(int index, IMetrics metrics);
+}
@@ -0,0 +1,278 @@
+package com.looper.interfaces;
+
+import java.util.List;
+
+/**
+ * 管道接口
+ *
+ * @param <IM>> IMaterial
+ * @param <M>   IMaterial<M>的原料类型
+ */
+public interface IPipe<IM extends IMaterial<M>, M> {
+
+    void setMaxTry(int maxTry);
+
+    void setDelay(int delay);
+
+    /**
+     * 设置所有工序的重试策略
+     *
+     * @param policy 重试策略 null：立即重试
+     */
+    void setRetryPolicy(IRetryPolicy policy);
+
+    /**
+     * 设置指定工序的重试策略
+     *
+     * @param index  工序索引
+     * @param policy 重试策略 null：立即重试
+     */
+    void setRetryPolicy(int index, IRetryPolicy policy);
+
+    /**
+     * 设置预写日志，各工序恢复日志中的待处理原料；管道释放时关闭日志
+     *
+     * @param journal 日志
+     * @return 恢复的原料数
+     */
+    int setJournal(IJournal<IM> journal);
+
+    /**
+     * 指定工序的运行指标 可随时读取
+     *
+     * @param index 工序索引
+     * @return null：索引越界
+     */
+    IMetrics getMetrics(int index);
+
+    /**
+     * 设置所有工序的运行指标监听，按间隔分别回调各工序的指标
+     *
+     * @param listener 监听 null：停止回调
+     * @param interval 回调间隔 毫秒
+     */
+    void setMetricsListener(IMetricsListener listener, long interval);
+
+    /**
+     * 设置指定工序并行处理的原料数
+     *
+     * @param index       工序索引
+     * @param concurrency 并行数
+     */
+    void setConcurrency(int index, int concurrency);
+
+    /**
+     * 设置指定工序的自适应并行数
+     *
+     * @param index 工序索引
+     * @param limit 自适应并行数 不可与其他工序共用；null：固定为当前并行数
+     * @see IProcedure#setAdaptiveConcurrency(IConcurrencyLimit)
+     */
+    void setAdaptiveConcurrency(int index, IConcurrencyLimit limit);
+
+    /**
+     * 设置指定工序批量处理
+     *
+     * @param index   工序索引
+     * @param size    批量数 小于等于1 关闭批量处理
+     * @param timeout 最长等待时间 毫秒
+     */
+    void setBatch(int index, int size, long timeout);
+
+    /**
+     * 设置指定工序的处理超时
+     *
+     * @param index   工序索引
+     * @param timeout 超时时间 毫秒 小于等于0：不限
+     * @see IProcedure#setTimeout(long)
+     */
+    void setTimeout(int index, long timeout);
+
+    /**
+     * 设置指定工序限流
+     *
+     * @param index            工序索引
+     * @param permitsPerSecond 每秒处理的原料数 小于等于0：不限流
+     * @param burst            最多可突发处理的原料数
+     * @see IProcedure#setRateLimit(double, int)
+     */
+    void setRateLimit(int index, double permitsPerSecond, int burst);
+
+    /**
+     * 设置指定工序熔断
+     *
+     * @param index       工序索引
+     * @param failureRate 失败率阈值 0~1 小于等于0：不熔断
+     * @param window      统计的最近处理次数
+     * @param openTime    断开时长 毫秒
+     * @see IProcedure#setCircuitBreaker(double, int, long)
+     */
+    void setCircuitBreaker(int index, double failureRate, int window, long openTime);
+
+    /**
+     * 设置指定工序异步处理
+     *
+     * @param index          工序索引
+     * @param maxOutstanding 最多未完成的原料数 小于等于0：同步处理
+     * @see IProcedure#setAsync(int)
+     */
+    void setAsync(int index, int maxOutstanding);
+
+    /**
+     * 设置指定工序的成功原料去重集合
+     *
+     * @param index 工序索引
+     * @param dedup 去重集合 不可与其他工序共用；null：精确去重 不淘汰
+     * @see IProcedure#setDedup(IDedup)
+     */
+    void setDedup(int index, IDedup dedup);
+
+    /**
+     * 设置指定工序的结果缓存
+     *
+     * @param index 工序索引
+     * @param cache 结果缓存 不可与其他工序共用；null：不缓存
+     * @see IProcedure#setResultCache(IResultCache)
+     */
+    void setResultCache(int index, IResultCache<IM> cache);
+
+    /**
+     * 设置指定工序的优先级老化间隔
+     *
+     * @param index 工序索引
+     * @param aging 老化间隔 毫秒 小于等于0：不老化，严格按优先级
+     */
+    void setAging(int index, long aging);
+
+    /**
+     * 设置指定工序的分区数
+     *
+     * @param index      工序索引
+     * @param partitions 分区数 小于等于0：不分区
+     * @see IProcedure#setPartitions(int)
+     */
+    void setPartitions(int index, int partitions);
+
+    /**
+     * 设置指定工序融合到上道工序（仅自动轮训）：
+     * 上道工序处理成功后在同一线程直接处理结果，不经原料列表及调度；重试、状态集及 onComplete 仍按工序独立统计
+     *
+     * @param index 工序索引 首道工序不可融合
+     * @param fused 是否融合
+     */
+    void setFusion(int index, boolean fused);
+
+    /**
+     * 按处理耗时自动融合：工序的平均处理耗时不超过阈值时融合到上道工序，超过时取消融合，覆盖 setFusion 的设置
+     *
+     * @param threshold 处理耗时阈值 微秒 小于等于0：关闭自动融合
+     */
+    void setAutoFusion(long threshold);
+
+    /**
+     * 设置指定工序原料列表容量
+     * 首道工序的 REJECT 策略拒绝到 apply 的调用方，其他工序的 REJECT 策略拒绝上道工序流转的结果
+     *
+     * @param index    工序索引
+     * @param capacity 容量 IProcedure.UNBOUNDED：不限容量
+     * @param overflow 已满时的处理策略
+     */
+    void setCapacity(int index, int capacity, IProcedure.Overflow overflow);
+
+    /**
+     * 添加原料，并向首到工序流转
+     *
+     * @param m
+     * @return 首道工序添加原料的记录数，原料列表已满被拒绝的原料不计入
+     */
+    int apply(Object m);
+
+    /**
+     * 添加单个原料，并返回其处理结果
+     * 原料及其流转的结果均离开管道时完成：末道工序处理成功、达最大尝试次数、被丢弃、拒绝或清空
+     *
+     * @param m 原料
+     * @return 处理结果 原料未被添加时已完成 result() 为null
+     */
+    ICompletion<IM> submit(IM m);
+
+    /**
+     * 设置死信记录：处理失败离开管道的原料（达最大尝试次数、已过截止时间、处理出错）记录失败的工序、尝试次数及原因，
+     * 不随管道处理完毕清空（见 DeadLetter）
+     *
+     * @param deadLetter 死信记录 null：不记录（默认），失败原料仅在处理完毕前可由 getProcessStatus 查看
+     */
+    void setDeadLetter(IDeadLetter<IM> deadLetter);
+
+    IDeadLetter<IM> getDeadLetter();
+
+    /**
+     * 重新添加死信记录中的原料：尝试次数清零，添加到失败的工序，不重复处理之前的工序；添加成功后移出记录，未添加的记录保留
+     *
+     * @param entries 记录 如 getDeadLetter().entries() 中选取的
+     * @return 添加原料的记录数
+     */
+    int replay(List<IDeadLetter.Entry<IM>> entries);
+
+    /**
+     * 暂停管道的所有工序，不会影响管道中正在处理的原料
+     */
+    void pause();
+
+    /**
+     * 恢复管道的所有工序
+     */
+    void resume();
+
+    /**
+     * 清空管道的所有工序的待处理原料列表
+     */
+    void clear();
+
+    /**
+     * 释放资源
+     */
+    void release();
+
+    /**
+     * 获取指定位置的工序实例
+     *
+     * @param index
+     * @return
+     */
+    IProcedure getProcedure(int index);
+
+    /**
+     * 处理原料，并封装成下一道工序的原料
+     *
+     * @param index  索引
+     * @param result 当前工序待处理的结果 待流转下道工序的原料
+     * @return 下一个工序的处理的原料
+     */
+    IM onProcess(int index, IM result);
+
+    /**
+     * 异步处理原料（见 setAsync），处理完毕时调用 promise.complete
+     *
+     * @param index    索引
+     * @param material 当前工序待处理原料
+     * @param promise  处理结果 完成时传入下一个工序的处理的原料
+     */
+    void onProcessAsync(int index, IM material, IPromise<IM> promise);
+
+    /**
+     * 批量处理原料，成功的结果以一次 apply(List) 流转下道工序
+     *
+     * @param index     索引
+     * @param materials 当前工序待处理原料列表
+     * @return 与原料列表一一对应的处理结果
+     */
+    List<IM> onProcessBatch(int index, List<IM> materials);
+
+    /**
+     * 工序处理完毕回调，管道中无原料时视为管道处理完毕
+     *
+     * @param index looper 索引
+     */
+    void onComplete(int index);
+}
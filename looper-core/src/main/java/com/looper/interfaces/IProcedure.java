@@ -0,0 +1,288 @@
+package com.looper.interfaces;
+
+import java.util.List;
+
+/**
+ * 工序接口
+ *
+ * @param <IM>> IMaterial
+ * @param <M>   IMaterial<M>的原料类型
+ */
+public interface IProcedure<IM extends IMaterial<M>, M> {
+    int CODE_NEXT = 70001;
+    //最小间隔
+    int MIN_DELAY = 0;
+    int MAX_TRY = 2;
+    // 不限容量
+    int UNBOUNDED = 0;
+
+    /**
+     * 原料列表已满时的处理策略
+     */
+    enum Overflow {
+        // 阻塞添加原料的线程（上道工序），直至有空余容量
+        BLOCK,
+        // 拒绝添加，apply 返回的记录数不计入
+        REJECT,
+        // 丢弃最早添加的原料，使用优先级时丢弃优先级最低中最早添加的
+        DROP_OLDEST
+    }
+
+    /**
+     * 熔断状态
+     */
+    enum Circuit {
+        // 闭合：正常处理
+        CLOSED,
+        // 断开：暂停弹出原料
+        OPEN,
+        // 半开：放行试探处理
+        HALF_OPEN
+    }
+
+    void setMaxTry(int maxTry);
+
+    void setDelay(int delay);
+
+    /**
+     * 设置处理超时：单次处理（onProcess 或一批原料的 onProcessBatch）超过 timeout，或到达原料的截止时间时取消处理：
+     * 标记取消（Procedurer.isCancelled()）并中断处理线程，onProcess 需响应中断或检查取消标记后返回。
+     * 超时视为一次失败的尝试，未达最大尝试次数时按重试策略重试；取消后返回的失败结果照常流转，其他结果忽略。
+     * 不响应取消的 onProcess 仍占用处理线程直至返回
+     *
+     * @param timeout 超时时间 毫秒 小于等于0：不限（默认），仅按原料截止时间取消
+     */
+    void setTimeout(long timeout);
+
+    /**
+     * 设置限流（令牌桶）：每秒至多处理 permitsPerSecond 个原料，空闲时可突发处理 burst 个；
+     * 所有工作循环共用，可在运行中调整。令牌不足时原料在列表中等待，不占用线程
+     *
+     * @param permitsPerSecond 每秒处理的原料数 小于等于0：不限流（默认）
+     * @param burst            最多可突发处理的原料数
+     */
+    void setRateLimit(double permitsPerSecond, int burst);
+
+    /**
+     * 设置异步处理：弹出的原料回调 onProcessAsync 发起处理后即返回，处理线程继续弹出下一个原料，
+     * 至多 maxOutstanding 个原料未完成；完成的结果在工序的轮训线程上同 onProcess 的结果流转、重试或失败。
+     * 用于等待 I/O 为主的工序，单个线程即可保持多个请求同时进行。
+     * 超时或到达截止时间时按失败的尝试流转，不中断线程；批量处理、非自动轮训时不生效，不参与工序融合
+     *
+     * @param maxOutstanding 最多未完成的原料数 小于等于0：同步处理（默认）
+     */
+    void setAsync(int maxOutstanding);
+
+    /**
+     * 设置熔断：最近 window 次处理（单个原料或一批原料）的失败率达到 failureRate 时断开，
+     * 断开期间不弹出原料，原料在列表中等待而非失败；经过 openTime 后半开，放行少量试探处理，
+     * 试探全部成功后闭合恢复处理，任一失败重新断开。失败、出错、超时或结果为null视为失败；
+     * 重新设置时状态重置
+     *
+     * @param failureRate 失败率阈值 0~1 小于等于0：不熔断（默认）
+     * @param window      统计的最近处理次数，处理次数不足时不断开
+     * @param openTime    断开时长 毫秒
+     */
+    void setCircuitBreaker(double failureRate, int window, long openTime);
+
+    /**
+     * 熔断状态 未设置熔断时为 CLOSED
+     */
+    Circuit circuit();
+
+    /**
+     * 设置重试策略，处理失败未达最大尝试次数时 按策略等待后重试
+     *
+     * @param policy 重试策略 null：立即重试
+     */
+    void setRetryPolicy(IRetryPolicy policy);
+
+    /**
+     * 设置预写日志，并恢复日志中本工序的待处理原料
+     *
+     * @param journal 日志 null：不记录
+     * @return 恢复的原料数
+     */
+    int setJournal(IJournal<IM> journal);
+
+    /**
+     * 运行指标 可随时读取
+     */
+    IMetrics getMetrics();
+
+    /**
+     * 设置运行指标监听，按间隔在轮训线程上回调
+     *
+     * @param listener 监听 null：停止回调
+     * @param interval 回调间隔 毫秒
+     */
+    void setMetricsListener(IMetricsListener listener, long interval);
+
+    /**
+     * 设置并行处理的原料数，仅自动轮训工序有效，非自动轮训工序始终逐个处理
+     *
+     * @param concurrency 并行数 默认1：在轮训线程上逐个处理
+     */
+    void setConcurrency(int concurrency);
+
+    /**
+     * 设置自适应并行数，仅自动轮训工序有效：按初始并行数开始，每个任务处理完毕按耗时及结果调整并行数（见 ConcurrencyLimit）
+     * 此后 setConcurrency 设置的并行数在下次调整时被覆盖
+     *
+     * @param limit 自适应并行数 每个工序独立实例；null：固定为当前并行数
+     */
+    void setAdaptiveConcurrency(IConcurrencyLimit limit);
+
+    /**
+     * 设置批量处理，仅自动轮训工序有效：
+     * 原料数达到size，或等待超过timeout，弹出至多size个原料，回调 onProcessBatch
+     *
+     * @param size    批量数 小于等于1 关闭批量处理
+     * @param timeout 最长等待时间 毫秒
+     */
+    void setBatch(int size, long timeout);
+
+    /**
+     * 设置成功原料的去重集合，用于拒绝重复添加已成功的原料
+     * 默认精确记录所有成功原料直至清空，长期运行时可按保留时间、容量淘汰或使用概率过滤器（见 Dedup）
+     *
+     * @param dedup 去重集合 每个工序独立实例；null：精确去重 不淘汰
+     */
+    void setDedup(IDedup dedup);
+
+    /**
+     * 设置结果缓存：原料处理成功时以 key() 缓存结果，再次弹出同一原料时（如去重集合淘汰后重复添加、clear 后再次添加）
+     * 命中则不调用 onProcess，缓存结果的副本（见 Procedurer.fork）按成功流转下道工序。
+     * 非 Material 的结果需重写 fork 复制，否则缓存的实例会再次流转；命中统计见 IMetrics.cacheHits
+     *
+     * @param cache 结果缓存 每个工序独立实例（见 ResultCache）；null：不缓存（默认）
+     */
+    void setResultCache(IResultCache<IM> cache);
+
+    /**
+     * 设置优先级老化间隔：原料每等待一个间隔，优先级视为提升一级，避免低优先级原料饿死
+     *
+     * @param aging 老化间隔 毫秒 小于等于0：不老化，严格按优先级
+     */
+    void setAging(long aging);
+
+    /**
+     * 设置分区数：按原料 partitionKey() 的哈希分区，同一分区的原料严格按添加顺序依次处理，
+     * 失败重试的原料在重试前占用分区；不同分区并行处理，并行数由 setConcurrency 限制
+     *
+     * @param partitions 分区数 小于等于0：不分区（默认）
+     */
+    void setPartitions(int partitions);
+
+    /**
+     * 设置原料列表容量
+     *
+     * @param capacity 容量 UNBOUNDED：不限容量
+     * @param overflow 已满时的处理策略
+     */
+    void setCapacity(int capacity, Overflow overflow);
+
+    /**
+     * 原料列表容量 UNBOUNDED：不限容量
+     * 结合 count() 获取当前占用，供添加原料方自行限流
+     */
+    int capacity();
+
+    /**
+     * 添加任务原料
+     * 重复添加处理规则：
+     * 1. 已处理成功的原料，success列表中存在，不添加
+     * 2. 已处理失败的原料，error 列表中存在，移出error列表 后添加
+     * 原料列表已满时按 Overflow 策略处理
+     *
+     * @param obj 原料
+     * @return 添加原料的记录数
+     */
+    int apply(Object obj);
+
+    /**
+     * 在调用方线程直接处理原料，不经原料列表及轮训线程（工序融合）：
+     * 计数、重试、成功失败集合、日志及运行指标同轮训处理，需重试的原料加入原料列表 由本工序轮训处理；
+     * 直接处理的原料可能先于原料列表中的原料处理。
+     * 非自动轮训、暂停、批量处理 或处理中的任务数已达并行数时，按 apply 添加。
+     *
+     * @param material 原料
+     * @return 添加或处理原料的记录数
+     */
+    int applyInline(IM material);
+
+    /**
+     * 获取最早添加的可用原料 不移出
+     */
+    IM next();
+
+    /**
+     * 手动从原料队列中移出
+     *
+     * @param material
+     */
+    boolean remove(IM material);
+
+    /**
+     * 清空原料列表
+     */
+    void clear();
+
+    /**
+     * 轮训下一个原料
+     *
+     * @param delay 延迟时间
+     */
+    void loopNext(long delay);
+
+    /**
+     * 当前原料记录数
+     */
+    int count();
+
+    /**
+     * 暂停 单不会影响正在处理的原料处理
+     */
+    void pauseLoop();
+
+    /**
+     * 恢复
+     */
+    void resumeLoop();
+
+    /**
+     * 释放资源 结束loop线程
+     */
+    void release();
+
+    /**
+     * 处理任务回调
+     *
+     * @param material
+     * @return 是否自动流转的标识 true：流转  false：不流转
+     */
+    IM onProcess(IM material);
+
+    /**
+     * 异步处理任务回调（见 setAsync），处理完毕时调用 promise.complete
+     *
+     * @param material 原料
+     * @param promise  处理结果
+     */
+    void onProcessAsync(IM material, IPromise<IM> promise);
+
+    /**
+     * 批量处理任务回调
+     *
+     * @param materials 原料列表
+     * @return 与原料列表一一对应的处理结果
+     */
+    List<IM> onProcessBatch(List<IM> materials);
+
+    /**
+     * 处理完毕回调
+     */
+    void onComplete();
+
+    IProcessStatus<IM, M> getProcessStatus();
+}
@@ -0,0 +1,27 @@
+package com.looper.interfaces;
+
+/**
+ * 异步处理的结果：onProcessAsync 发起处理后，在任意线程调用 complete 或 fail，仅首次调用生效；
+ * 不依赖 CompletableFuture，可运行于 Android API 21。
+ *
+ * @param <IM> IMaterial
+ */
+public interface IPromise<IM extends IMaterial> {
+
+    /**
+     * 处理完毕
+     *
+     * @param result 同 onProcess 的返回值，null 视为未完成
+     */
+    void complete(IM result);
+
+    /**
+     * 处理出错 同 onProcess 抛出异常，视为一次失败的尝试
+     */
+    void fail(Throwable e);
+
+    /**
+     * 是否已超时取消（见 IProcedure.setTimeout），取消后的结果忽略
+     */
+    boolean isCancelled();
+}
@@ -0,0 +1,34 @@
+package com.looper.interfaces;
+
+/**
+ * 工序的结果缓存：以原料 key() 记录处理成功的结果，再次处理同一原料时不调用 onProcess，
+ * 缓存的结果直接按成功流转下道工序（见 IProcedure.setResultCache）。
+ * 工作线程并发调用，实现需线程安全；不随工序 clear 清空。
+ *
+ * @param <IM> IMaterial
+ */
+public interface IResultCache<IM extends IMaterial> {
+
+    /**
+     * @return 缓存的结果 未缓存或已过期返回null
+     */
+    IM get(Object key);
+
+    void put(Object key, IM result);
+
+    void remove(Object key);
+
+    /**
+     * 缓存的结果数
+     */
+    int size();
+
+    void clear();
+
+    /**
+     * 结果的权重 如占用的内存字节数，用于按总权重淘汰
+     */
+    interface Weigher<IM extends IMaterial> {
+        int weigh(IM result);
+    }
+}
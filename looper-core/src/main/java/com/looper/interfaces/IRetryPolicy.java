@@ -0,0 +1,14 @@
+package com.looper.interfaces;
+
+/**
+ * 重试策略：原料处理失败且未达最大尝试次数时，决定再次尝试前的等待时间
+ * 等待重试的原料不在原料列表中，不阻塞其后添加的原料。
+ */
+public interface IRetryPolicy {
+
+    /**
+     * @param count 已尝试次数 从1开始
+     * @return 再次尝试前的等待时间 毫秒，小于等于0：立即重新加入原料列表的最后
+     */
+    long delay(int count);
+}
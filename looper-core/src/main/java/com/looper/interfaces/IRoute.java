@@ -0,0 +1,15 @@
+package com.looper.interfaces;
+
+/**
+ * 条件路由：决定节点的处理结果是否流转到下个节点
+ *
+ * @param <IM> IMaterial
+ */
+public interface IRoute<IM extends IMaterial> {
+
+    /**
+     * @param result 处理成功的结果
+     * @return true：流转
+     */
+    boolean accept(IM result);
+}
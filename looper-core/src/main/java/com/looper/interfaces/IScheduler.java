@@ -0,0 +1,49 @@
+package com.looper.interfaces;
+
+import java.util.concurrent.Executor;
+
+/**
+ * 工序的调度器：负责在工序的轮训线程上执行任务
+ * 同一任务至多存在一个待执行的调度，重复调度会替换之前未执行的调度。
+ */
+public interface IScheduler {
+
+    /**
+     * 延迟执行任务，若该任务已有未执行的调度 先移除
+     *
+     * @param task  任务
+     * @param delay 延迟时间 毫秒
+     */
+    void schedule(Runnable task, long delay);
+
+    /**
+     * 移除任务未执行的调度 不影响正在执行的任务
+     *
+     * @param task 任务
+     */
+    void cancel(Runnable task);
+
+    /**
+     * 释放资源 结束轮训线程
+     */
+    void release();
+
+    /**
+     * 工序并行处理的工作线程，不保证执行顺序
+     *
+     * @return null：调度器不提供，工序自建工作线程池
+     */
+    default Executor workers() {
+        return null;
+    }
+
+    /**
+     * 调度器工厂，每个工序创建一个调度器
+     */
+    interface Factory {
+        /**
+         * @param name 工序名称 用作线程名
+         */
+        IScheduler create(String name);
+    }
+}
@@ -0,0 +1,224 @@
+package com.looper.core;
+
+import com.looper.Logger;
+import com.looper.Material;
+import com.looper.interfaces.ICompletion;
+import com.looper.interfaces.IRoute;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class DagPipeTest {
+    private DagPipe<Material<Integer>, Integer> pipe;
+
+    @Before
+    public void setUp() {
+        Logger.setDebug(false);
+    }
+
+    @After
+    public void tearDown() {
+        if (null != pipe) pipe.release();
+    }
+
+    /**
+     * 0 广播到 1、2，汇合到 3；2 对奇数原料失败
+     */
+    private DagPipe<Material<Integer>, Integer> diamond() {
+        DagPipe.Graph<Material<Integer>> graph = new DagPipe.Builder<Material<Integer>>(4)
+                .edge(0, 1).edge(0, 2).edge(1, 3).edge(2, 3).join(3)
+                .build();
+        return new DagPipe<Material<Integer>, Integer>(graph) {
+            @Override
+            public Material<Integer> onProcess(int index, Material<Integer> material) {
+                // 分支 1 较慢：分支 2 先失败
+                if (index == 1) sleep(5);
+                boolean ok = !(index == 2 && material.material() % 2 == 1);
+                return new Material<>(material.material(), ok);
+            }
+        };
+    }
+
+    @Test(timeout = 10000)
+    public void failingBranchResolvesAsFailure() throws Exception {
+        pipe = diamond();
+        pipe.setMaxTry(2);
+        List<ICompletion<Material<Integer>>> completions = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            completions.add(pipe.submit(new Material<>(i)));
+        }
+        for (int i = 0; i < completions.size(); i++) {
+            ICompletion<Material<Integer>> completion = completions.get(i);
+            assertTrue("not done: " + i, completion.await(5000));
+            Material<Integer> result = completion.result();
+            if (i % 2 == 1) {
+                // 分支 2 失败 汇合不齐：失败优先于分支 1 的成功结果
+                assertTrue("failure reported as success: " + completion, null == result || !result.state());
+                assertEquals(2, completion.index());
+            } else {
+                assertNotNull(result);
+                assertTrue(result.state());
+                assertEquals(3, completion.index());
+            }
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void incompleteJoinResolvesAsFailure() throws Exception {
+        // 分支 2 按条件跳过奇数原料：无失败的分支，汇合不齐
+        DagPipe.Graph<Material<Integer>> graph = new DagPipe.Builder<Material<Integer>>(4)
+                .edge(0, 1).edge(0, 2, new com.looper.interfaces.IRoute<Material<Integer>>() {
+                    @Override
+                    public boolean accept(Material<Integer> result) {
+                        return result.material() % 2 == 0;
+                    }
+                }).edge(1, 3).edge(2, 3).join(3)
+                .build();
+        pipe = new DagPipe<Material<Integer>, Integer>(graph) {
+            @Override
+            public Material<Integer> onProcess(int index, Material<Integer> material) {
+                return new Material<>(material.material(), true);
+            }
+        };
+        ICompletion<Material<Integer>> odd = pipe.submit(new Material<>(1));
+        ICompletion<Material<Integer>> even = pipe.submit(new Material<>(2));
+        assertTrue(odd.await(5000));
+        assertTrue(even.await(5000));
+        assertTrue("incomplete join reported as success: " + odd, null == odd.result() || !odd.result().state());
+        assertTrue(even.result().state());
+        assertEquals(3, even.index());
+    }
+
+    /**
+     * 0 流转到 1、2（仅偶数），汇合到 3；-1 只流转到 4 并阻塞，管道持续处理中
+     */
+    private DagPipe<Material<Integer>, Integer> blocked(final CountDownLatch release, final List<Integer> incomplete) {
+        DagPipe.Graph<Material<Integer>> graph = new DagPipe.Builder<Material<Integer>>(5)
+                .edge(0, 1, new IRoute<Material<Integer>>() {
+                    @Override
+                    public boolean accept(Material<Integer> result) {
+                        return result.material() != -1;
+                    }
+                }).edge(0, 2, new IRoute<Material<Integer>>() {
+                    @Override
+                    public boolean accept(Material<Integer> result) {
+                        return result.material() % 2 == 0;
+                    }
+                }).edge(0, 4, new IRoute<Material<Integer>>() {
+                    @Override
+                    public boolean accept(Material<Integer> result) {
+                        return result.material() == -1;
+                    }
+                }).edge(1, 3).edge(2, 3).join(3)
+                .build();
+        return new DagPipe<Material<Integer>, Integer>(graph) {
+            @Override
+            public Material<Integer> onProcess(int index, Material<Integer> material) {
+                if (index == 4) {
+                    try {
+                        release.await(5000, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return new Material<>(material.material(), true);
+            }
+
+            @Override
+            protected void onJoinIncomplete(int index, List<Material<Integer>> parts) {
+                synchronized (incomplete) {
+                    incomplete.add(parts.get(0).material());
+                }
+            }
+        };
+    }
+
+    @Test(timeout = 10000)
+    public void joinCapacityDropsOldestWhileBusy() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> incomplete = new ArrayList<>();
+        pipe = blocked(release, incomplete);
+        pipe.setJoinCapacity(3, 3);
+        ICompletion<Material<Integer>> blocker = pipe.submit(new Material<>(-1));
+        List<ICompletion<Material<Integer>>> odds = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            odds.add(pipe.submit(new Material<>(2 * i + 1)));
+        }
+        // 管道未处理完毕：超出上限的最早 7 个按失败完成
+        for (int i = 0; i < 7; i++) {
+            assertTrue("not done: " + i, odds.get(i).await(5000));
+            Material<Integer> result = odds.get(i).result();
+            assertTrue("dropped reported as success: " + i, null == result || !result.state());
+        }
+        for (int i = 7; i < 10; i++) assertFalse(odds.get(i).isDone());
+        synchronized (incomplete) {
+            assertEquals(Arrays.asList(1, 3, 5, 7, 9, 11, 13), incomplete);
+        }
+
+        release.countDown();
+        assertTrue(blocker.await(5000));
+        for (int i = 7; i < 10; i++) assertTrue(odds.get(i).await(5000));
+        synchronized (incomplete) {
+            assertEquals(10, incomplete.size());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void joinTimeoutDropsExpiredOnNextArrival() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> incomplete = new ArrayList<>();
+        pipe = blocked(release, incomplete);
+        pipe.setJoinTimeout(3, 50);
+        pipe.submit(new Material<>(-1));
+        ICompletion<Material<Integer>> first = pipe.submit(new Material<>(1));
+        sleep(150);
+        assertFalse(first.isDone());
+        // 之后到达的结果触发超时检查
+        ICompletion<Material<Integer>> second = pipe.submit(new Material<>(3));
+        assertTrue(first.await(5000));
+        assertTrue(null == first.result() || !first.result().state());
+        assertFalse(second.isDone());
+        release.countDown();
+        assertTrue(second.await(5000));
+    }
+
+    @Test(timeout = 10000)
+    public void failedBroadcastBranchWinsOverSuccess() throws Exception {
+        // 0 广播到 1、2 无汇合；2 失败
+        DagPipe.Graph<Material<Integer>> graph = new DagPipe.Builder<Material<Integer>>(3)
+                .edge(0, 1).edge(0, 2)
+                .build();
+        pipe = new DagPipe<Material<Integer>, Integer>(graph) {
+            @Override
+            public Material<Integer> onProcess(int index, Material<Integer> material) {
+                if (index == 1) sleep(50);
+                return new Material<>(material.material(), index != 2);
+            }
+        };
+        pipe.setMaxTry(1);
+        ICompletion<Material<Integer>> completion = pipe.submit(new Material<>(7));
+        assertTrue(completion.await(5000));
+        assertFalse(completion.result().state());
+        assertEquals(2, completion.index());
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.looper.core;
+
+import com.looper.Logger;
+import com.looper.Material;
+import com.looper.interfaces.IDeadLetter;
+import com.looper.interfaces.IMaterialSerializer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DeadLetterTest {
+    private static final IMaterialSerializer<Material<Integer>> SERIALIZER = new IMaterialSerializer<Material<Integer>>() {
+        @Override
+        public byte[] serialize(Material<Integer> material) {
+            return ByteBuffer.allocate(4).putInt(material.material()).array();
+        }
+
+        @Override
+        public Material<Integer> deserialize(byte[] data) {
+            return new Material<>(ByteBuffer.wrap(data).getInt());
+        }
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FlowPipe<Material<Integer>, Integer> pipe;
+
+    @Before
+    public void setUp() {
+        Logger.setDebug(false);
+    }
+
+    @After
+    public void tearDown() {
+        if (null != pipe) pipe.release();
+    }
+
+    private static IDeadLetter.Entry<Material<Integer>> entry(int material, int index, long time) {
+        return new Entry(new Material<>(material), index, time);
+    }
+
+    private static List<Integer> materials(IDeadLetter<Material<Integer>> deadLetter) {
+        List<Integer> materials = new ArrayList<>();
+        for (IDeadLetter.Entry<Material<Integer>> entry : deadLetter.entries()) {
+            materials.add(entry.material().material());
+        }
+        return materials;
+    }
+
+    @Test
+    public void spilledEntriesAreListedAndRemovable() throws Exception {
+        File file = new File(folder.getRoot(), "spill.dead");
+        IDeadLetter<Material<Integer>> deadLetter = DeadLetter.file(file, SERIALIZER, 2);
+        for (int i = 0; i < 5; i++) deadLetter.add(entry(i, 0, 100 + i));
+        assertEquals(5, deadLetter.size());
+        // 写入文件的 0~2 在内存中的 3、4 之前
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), materials(deadLetter));
+
+        List<IDeadLetter.Entry<Material<Integer>>> entries = deadLetter.entries();
+        assertTrue(deadLetter.remove(entries.get(1)));
+        assertFalse(deadLetter.remove(entries.get(1)));
+        assertEquals(4, deadLetter.size());
+        assertEquals(Arrays.asList(0, 2, 3, 4), materials(deadLetter));
+
+        // 重启后仅文件中的记录有效
+        IDeadLetter<Material<Integer>> reopened = DeadLetter.file(file, SERIALIZER, 2);
+        assertEquals(Arrays.asList(0, 2), materials(reopened));
+    }
+
+    @Test
+    public void removalsRewriteFileInBatches() throws Exception {
+        File file = new File(folder.getRoot(), "batch.dead");
+        IDeadLetter<Material<Integer>> deadLetter = DeadLetter.file(file, SERIALIZER, 1);
+        for (int i = 0; i < 100; i++) deadLetter.add(entry(i, 0, 100 + i));
+        long full = file.length();
+        List<IDeadLetter.Entry<Material<Integer>>> entries = deadLetter.entries();
+        assertEquals(100, entries.size());
+
+        // 移出 50 条：追加移出标记，无效记录多于有效记录时才重写文件
+        long last = full;
+        int rewrites = 0;
+        for (int i = 0; i < 50; i++) {
+            assertTrue(deadLetter.remove(entries.get(i)));
+            if (file.length() < last) rewrites++;
+            last = file.length();
+        }
+        assertEquals(1, rewrites);
+        assertTrue(file.length() < full);
+        assertEquals(50, deadLetter.size());
+
+        IDeadLetter<Material<Integer>> reopened = DeadLetter.file(file, SERIALIZER, 1);
+        assertEquals(49, reopened.size());
+        assertEquals(50, (int) materials(reopened).get(0));
+    }
+
+    @Test
+    public void spilledEntriesBeyondFileCapacityEvictOldest() throws Exception {
+        File file = new File(folder.getRoot(), "evict.dead");
+        IDeadLetter<Material<Integer>> deadLetter = DeadLetter.file(file, SERIALIZER, 1, 3);
+        for (int i = 0; i < 10; i++) deadLetter.add(entry(i, 0, 100 + i));
+        // 内存中 9，文件中仅保留最后写入的 6~8
+        assertEquals(4, deadLetter.size());
+        assertEquals(Arrays.asList(6, 7, 8, 9), materials(deadLetter));
+        // 淘汰的记录未重写文件时 重启后同样不保留
+        assertEquals(Arrays.asList(6, 7, 8), materials(DeadLetter.file(file, SERIALIZER, 1, 3)));
+
+        // 持续溢出：文件至多 2 * 3 条记录，每条 32 字节
+        deadLetter = DeadLetter.file(file, SERIALIZER, 1, 3);
+        for (int i = 10; i < 1000; i++) {
+            deadLetter.add(entry(i, 0, 100 + i));
+            assertTrue(file.length() <= 2 * 3 * 32);
+        }
+        assertEquals(Arrays.asList(996, 997, 998, 999), materials(deadLetter));
+        // 重启时文件容量调小 淘汰最早的记录
+        assertEquals(Arrays.asList(997, 998), materials(DeadLetter.file(file, SERIALIZER, 1, 2)));
+    }
+
+    @Test
+    public void refailedEntryReplacesSpilledRecord() throws Exception {
+        File file = new File(folder.getRoot(), "refail.dead");
+        IDeadLetter<Material<Integer>> deadLetter = DeadLetter.file(file, SERIALIZER, 1);
+        deadLetter.add(entry(1, 0, 100));
+        deadLetter.add(entry(2, 0, 101));
+        IDeadLetter.Entry<Material<Integer>> first = deadLetter.entries().get(0);
+        // 原料 1 再次失败 替换文件中的记录
+        deadLetter.add(entry(1, 0, 102));
+        assertEquals(2, deadLetter.size());
+        assertEquals(Arrays.asList(2, 1), materials(deadLetter));
+        // 之前的失败不再移出之后的记录
+        assertFalse(deadLetter.remove(first));
+        assertEquals(2, deadLetter.size());
+    }
+
+    @Test
+    public void removeKeepsLaterFailure() {
+        IDeadLetter<Material<Integer>> deadLetter = DeadLetter.memory(10);
+        IDeadLetter.Entry<Material<Integer>> first = entry(1, 0, 100);
+        deadLetter.add(first);
+        deadLetter.add(entry(1, 0, 200));
+        assertFalse(deadLetter.remove(first));
+        assertEquals(1, deadLetter.size());
+        assertTrue(deadLetter.remove(entry(1, 0, 200)));
+        assertEquals(0, deadLetter.size());
+    }
+
+    @Test(timeout = 10000)
+    public void replayKeepsEntriesNotDelivered() throws Exception {
+        pipe = new FlowPipe<Material<Integer>, Integer>(1) {
+            @Override
+            public Material<Integer> onProcess(int index, Material<Integer> material) {
+                return new Material<>(material.material(), true);
+            }
+        };
+        IDeadLetter<Material<Integer>> deadLetter = DeadLetter.memory(10);
+        pipe.setDeadLetter(deadLetter);
+        deadLetter.add(entry(1, 0, 100));
+        // 不存在的工序 添加失败
+        deadLetter.add(entry(2, 5, 100));
+        assertEquals(1, pipe.replay(deadLetter.entries()));
+        assertEquals(1, deadLetter.size());
+        assertEquals(5, deadLetter.entries().get(0).index());
+        assertEquals(0, pipe.replay(Collections.singletonList(deadLetter.entries().get(0))));
+        assertEquals(1, deadLetter.size());
+    }
+
+    private static class Entry implements IDeadLetter.Entry<Material<Integer>> {
+        private final Material<Integer> material;
+        private final int index;
+        private final long time;
+
+        Entry(Material<Integer> material, int index, long time) {
+            this.material = material;
+            this.index = index;
+            this.time = time;
+        }
+
+        @Override
+        public Material<Integer> material() {
+            return material;
+        }
+
+        @Override
+        public int index() {
+            return index;
+        }
+
+        @Override
+        public int attempts() {
+            return 1;
+        }
+
+        @Override
+        public String cause() {
+            return "failed";
+        }
+
+        @Override
+        public long time() {
+            return time;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.looper.core;
+
+import com.looper.interfaces.IDedup;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DedupTest {
+
+    @Test
+    public void exactKeepsAllUntilRemoved() {
+        IDedup dedup = Dedup.exact();
+        for (int i = 0; i < 1000; i++) dedup.add(i);
+        assertEquals(1000, dedup.size());
+        assertTrue(dedup.contains(0));
+        assertFalse(dedup.contains(1000));
+
+        dedup.remove(0);
+        assertFalse(dedup.contains(0));
+        assertEquals(999, dedup.size());
+        dedup.clear();
+        assertEquals(0, dedup.size());
+        assertFalse(dedup.contains(1));
+    }
+
+    @Test
+    public void ttlExpiresWithoutFurtherAdds() throws Exception {
+        IDedup dedup = Dedup.ttl(100);
+        dedup.add("a");
+        dedup.add("b");
+        assertTrue(dedup.contains("a"));
+        assertEquals(2, dedup.size());
+
+        Thread.sleep(150);
+        // 之后不再添加：判定及记录数同样淘汰已过期的原料
+        assertFalse(dedup.contains("a"));
+        assertEquals(0, dedup.size());
+        assertFalse(dedup.contains("b"));
+    }
+
+    @Test
+    public void ttlReaddExtendsExpiry() throws Exception {
+        IDedup dedup = Dedup.ttl(200);
+        dedup.add("a");
+        Thread.sleep(120);
+        dedup.add("a");
+        Thread.sleep(120);
+        // 首次添加已过期 重新添加的未过期
+        assertTrue(dedup.contains("a"));
+        assertEquals(1, dedup.size());
+    }
+
+    @Test
+    public void lruEvictsLeastRecentlyChecked() {
+        IDedup dedup = Dedup.lru(3);
+        dedup.add("a");
+        dedup.add("b");
+        dedup.add("c");
+        // a 判定过：淘汰时跳过一次
+        assertTrue(dedup.contains("a"));
+        dedup.add("d");
+        assertEquals(3, dedup.size());
+        assertTrue(dedup.contains("a"));
+        assertFalse(dedup.contains("b"));
+        assertTrue(dedup.contains("c"));
+        assertTrue(dedup.contains("d"));
+
+        // 均判定过：清除访问位后按添加顺序淘汰
+        dedup.add("e");
+        assertEquals(3, dedup.size());
+        assertFalse(dedup.contains("a"));
+        assertTrue(dedup.contains("e"));
+
+        dedup.remove("e");
+        assertFalse(dedup.contains("e"));
+        assertEquals(2, dedup.size());
+    }
+
+    @Test(timeout = 10000)
+    public void lruContainsRacesWithEviction() throws Exception {
+        final IDedup dedup = Dedup.lru(64);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 200000; i++) dedup.contains(i % 256);
+                    } catch (Throwable e) {
+                        error.set(e);
+                    }
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+        // 添加方加锁淘汰 判定不加锁
+        for (int i = 0; i < 100000; i++) {
+            dedup.add(i % 256);
+            assertTrue(dedup.size() <= 64);
+        }
+        for (Thread reader : readers) reader.join();
+        assertNull(error.get());
+        assertEquals(64, dedup.size());
+    }
+
+    @Test
+    public void bloomFalsePositiveRateWithinTarget() {
+        int capacity = 10000;
+        double fpp = 0.01;
+        IDedup dedup = Dedup.bloom(capacity, fpp);
+        for (int i = 0; i < capacity; i++) dedup.add(i);
+        // 添加的原料不漏判
+        for (int i = 0; i < capacity; i++) assertTrue(dedup.contains(i));
+        assertEquals(capacity, dedup.size());
+
+        int probes = 100000;
+        int positives = 0;
+        for (int i = capacity; i < capacity + probes; i++) {
+            if (dedup.contains(i)) positives++;
+        }
+        // 每代按一半误判率分配：满一代时误判率不超过目标
+        assertTrue("false positives: " + positives, positives < probes * fpp);
+    }
+
+    @Test
+    public void bloomRotatesGenerations() {
+        int capacity = 1000;
+        IDedup dedup = Dedup.bloom(capacity, 0.01);
+        for (int i = 0; i < 2 * capacity; i++) dedup.add(i);
+        // 两代均保留
+        for (int i = 0; i < 2 * capacity; i++) assertTrue(dedup.contains(i));
+        assertEquals(2 * capacity, dedup.size());
+
+        // 再次换代 丢弃第一代
+        dedup.add(-1);
+        assertEquals(capacity + 1, dedup.size());
+        int remembered = 0;
+        for (int i = 0; i < capacity; i++) {
+            if (dedup.contains(i)) remembered++;
+        }
+        assertTrue("remembered: " + remembered, remembered < capacity * 0.02);
+        for (int i = capacity; i < 2 * capacity; i++) assertTrue(dedup.contains(i));
+
+        // 不支持移出
+        dedup.remove(-1);
+        assertTrue(dedup.contains(-1));
+        dedup.clear();
+        assertEquals(0, dedup.size());
+        assertFalse(dedup.contains(-1));
+    }
+}
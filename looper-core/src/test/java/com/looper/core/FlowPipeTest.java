@@ -0,0 +1,127 @@
+package com.looper.core;
+
+import com.looper.Logger;
+import com.looper.Material;
+import com.looper.interfaces.ICompletion;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FlowPipeTest {
+    // 当前线程正在流转工序 0 的结果：此时处理工序 1 即已融合
+    private static final ThreadLocal<Boolean> FORWARDING = new ThreadLocal<>();
+
+    private FlowPipe<Material<Integer>, Integer> pipe;
+    // 工序 1 在上道工序线程上的处理次数
+    private final AtomicInteger inline = new AtomicInteger();
+    // 工序 1 首次尝试是否失败
+    private volatile boolean failFirst;
+    // 工序 1 重试后计数；工序 0 处理原料 1 时等待，保持上道工序忙碌
+    private final CountDownLatch retried = new CountDownLatch(1);
+    private volatile boolean hold;
+
+    @Before
+    public void setUp() {
+        Logger.setDebug(false);
+        pipe = new FlowPipe<Material<Integer>, Integer>(2) {
+            @Override
+            public Material<Integer> onProcess(int index, Material<Integer> material) {
+                if (index == 0 && hold && material.material() == 1) {
+                    await(retried);
+                }
+                if (index == 1) {
+                    if (Boolean.TRUE.equals(FORWARDING.get())) inline.incrementAndGet();
+                    if (material.getCount() == 2) retried.countDown();
+                    if (failFirst && material.getCount() == 1) return new Material<>(material.material(), false);
+                }
+                return new Material<>(material.material(), true);
+            }
+
+            @Override
+            protected void forward(int index, Material<Integer> result) {
+                FORWARDING.set(true);
+                try {
+                    super.forward(index, result);
+                } finally {
+                    FORWARDING.remove();
+                }
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        pipe.release();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(3000, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<ICompletion<Material<Integer>>> submit(int from, int count) {
+        List<ICompletion<Material<Integer>>> completions = new ArrayList<>(count);
+        for (int i = from; i < from + count; i++) {
+            completions.add(pipe.submit(new Material<>(i)));
+        }
+        return completions;
+    }
+
+    private static void awaitSucceeded(List<ICompletion<Material<Integer>>> completions) throws Exception {
+        for (ICompletion<Material<Integer>> completion : completions) {
+            assertTrue("not done: " + completion, completion.await(5000));
+            Material<Integer> result = completion.result();
+            assertTrue("failed: " + completion, null != result && result.state());
+            assertEquals(1, completion.index());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void fusedStageRunsOnUpstreamThread() throws Exception {
+        pipe.setFusion(1, true);
+        awaitSucceeded(submit(0, 50));
+        assertEquals(50, inline.get());
+        assertEquals(50, pipe.getProcedure(1).getMetrics().succeeded());
+    }
+
+    @Test(timeout = 10000)
+    public void retryInFusedStageIsProcessed() throws Exception {
+        pipe.setFusion(1, true);
+        pipe.setMaxTry(3);
+        failFirst = true;
+        hold = true;
+        // 融合处理 0 失败后 重新加入工序 1 的原料列表；工序 0 处理 1 期间不会处理完毕，由工序 1 的轮训重试 0
+        List<ICompletion<Material<Integer>>> completions = submit(0, 2);
+        assertTrue(completions.get(0).await(2000));
+        awaitSucceeded(completions);
+        assertEquals(2, pipe.getProcedure(1).getMetrics().retried());
+        assertEquals(0, pipe.getProcedure(1).count());
+    }
+
+    @Test(timeout = 20000)
+    public void autoFusionEvaluatesSampleUnderParallelWorkers() throws Exception {
+        // 阈值远大于处理耗时：首个采样点即融合
+        pipe.setAutoFusion(1000000);
+        pipe.setConcurrency(1, 4);
+        // 超过一个采样间隔（1024）
+        awaitSucceeded(submit(0, 1100));
+        // 等待最后的结果完成评估
+        Thread.sleep(50);
+        inline.set(0);
+        awaitSucceeded(submit(1100, 100));
+        assertEquals(100, inline.get());
+    }
+}
@@ -0,0 +1,222 @@
+package com.looper.core;
+
+import com.looper.Logger;
+import com.looper.Material;
+import com.looper.interfaces.IMaterialSerializer;
+import com.looper.interfaces.IProcedure;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MappedJournalTest {
+    private static final IMaterialSerializer<Material<Integer>> SERIALIZER = new IMaterialSerializer<Material<Integer>>() {
+        @Override
+        public byte[] serialize(Material<Integer> material) {
+            return ByteBuffer.allocate(4).putInt(material.material()).array();
+        }
+
+        @Override
+        public Material<Integer> deserialize(byte[] data) {
+            return new Material<>(ByteBuffer.wrap(data).getInt());
+        }
+    };
+    // 文件头 8 字节；记录头 17 字节 + 原料 4 字节
+    private static final int FILE_HEADER = 8;
+    private static final int RECORD = 17 + 4;
+    // 映射窗口
+    private static final int CHUNK = 4 << 20;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<MappedJournal<Material<Integer>>> journals = new ArrayList<>();
+    private Procedurer<Material<Integer>, Integer> procedurer;
+    private File file;
+
+    @Before
+    public void setUp() {
+        Logger.setDebug(false);
+        file = new File(folder.getRoot(), "journal");
+    }
+
+    @After
+    public void tearDown() {
+        if (null != procedurer) procedurer.release();
+        for (MappedJournal<Material<Integer>> journal : journals) journal.close();
+    }
+
+    /**
+     * 打开日志 不关闭即模拟进程终止：已写入映射内存的记录由页缓存保留
+     */
+    private MappedJournal<Material<Integer>> open(long syncInterval) throws Exception {
+        MappedJournal<Material<Integer>> journal = new MappedJournal<>(file, SERIALIZER, syncInterval);
+        journals.add(journal);
+        return journal;
+    }
+
+    private static List<Integer> materials(List<Material<Integer>> ms) {
+        List<Integer> materials = new ArrayList<>();
+        for (Material<Integer> m : ms) materials.add(m.material());
+        return materials;
+    }
+
+    @Test
+    public void replaysPendingMaterialsAfterCrash() throws Exception {
+        MappedJournal<Material<Integer>> journal = open(0);
+        for (int i = 1; i <= 5; i++) journal.apply(0, new Material<>(i));
+        journal.finish(0, new Material<>(2));
+        // 3 流转到下道工序：先记录下道工序的 apply 再记录本道工序的 finish
+        journal.apply(1, new Material<>(3));
+        journal.finish(0, new Material<>(3));
+        journal.apply(2, new Material<>(9));
+        journal.clear(2);
+
+        MappedJournal<Material<Integer>> reopened = open(0);
+        assertEquals(Arrays.asList(1, 4, 5), materials(reopened.recover(0)));
+        assertEquals(Arrays.asList(3), materials(reopened.recover(1)));
+        assertTrue(reopened.recover(2).isEmpty());
+        // 每个工序仅返回一次
+        assertTrue(reopened.recover(0).isEmpty());
+    }
+
+    @Test
+    public void resetDiscardsEarlierRecords() throws Exception {
+        MappedJournal<Material<Integer>> journal = open(0);
+        journal.apply(0, new Material<>(1));
+        journal.reset();
+        journal.apply(0, new Material<>(2));
+
+        MappedJournal<Material<Integer>> reopened = open(0);
+        assertEquals(Arrays.asList(2), materials(reopened.recover(0)));
+    }
+
+    @Test
+    public void compactsToPendingMaterialsOnOpen() throws Exception {
+        MappedJournal<Material<Integer>> journal = open(60000);
+        // 写入超过一个映射窗口的记录 仅 3 个待处理
+        int count = 120000;
+        for (int i = 0; i < count; i++) {
+            Material<Integer> m = new Material<>(i);
+            journal.apply(0, m);
+            if (i % 40000 != 0) journal.finish(0, m);
+        }
+        journal.close();
+        long before = file.length();
+        assertTrue(before > 2L * count * RECORD);
+
+        MappedJournal<Material<Integer>> reopened = open(0);
+        assertEquals(Arrays.asList(0, 40000, 80000), materials(reopened.recover(0)));
+        // 压缩后仅含待处理原料 加一个新的映射窗口
+        assertTrue(file.length() < before);
+        reopened.close();
+
+        // 压缩后的日志可再次回放
+        assertEquals(Arrays.asList(0, 40000, 80000), materials(open(0).recover(0)));
+    }
+
+    @Test
+    public void compactsWhileRunningWhenOverThreshold() throws Exception {
+        // 阈值小于一个映射窗口：每次映射下个窗口前压缩
+        MappedJournal<Material<Integer>> journal = new MappedJournal<>(file, SERIALIZER, 60000, 1);
+        journals.add(journal);
+        int count = 500000;
+        for (int i = 0; i < count; i++) {
+            Material<Integer> m = new Material<>(i);
+            journal.apply(0, m);
+            if (i % 100000 != 0) journal.finish(0, m);
+        }
+        // 写入的记录超过两个映射窗口 文件仍小于两个映射窗口
+        assertTrue(2L * count * RECORD > 2L * CHUNK);
+        assertTrue(file.length() < 2L * CHUNK);
+        journal.apply(1, new Material<>(-1));
+        journal.close();
+
+        assertEquals(Arrays.asList(0, 100000, 200000, 300000, 400000), materials(open(0).recover(0)));
+        assertEquals(Arrays.asList(-1), materials(open(0).recover(1)));
+    }
+
+    @Test
+    public void stopsAtTornTailRecord() throws Exception {
+        MappedJournal<Material<Integer>> journal = open(0);
+        for (int i = 1; i <= 3; i++) journal.apply(0, new Material<>(i));
+        journal.close();
+
+        // 末条记录只写入了一部分
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(FILE_HEADER + 3 * RECORD - 5);
+        } finally {
+            raf.close();
+        }
+        MappedJournal<Material<Integer>> reopened = open(0);
+        assertEquals(Arrays.asList(1, 2), materials(reopened.recover(0)));
+        reopened.apply(0, new Material<>(4));
+        reopened.close();
+        // 压缩时丢弃不完整的记录 之后追加的记录可回放
+        assertEquals(Arrays.asList(1, 2, 4), materials(open(0).recover(0)));
+    }
+
+    @Test
+    public void stopsAtCorruptedRecord() throws Exception {
+        MappedJournal<Material<Integer>> journal = open(0);
+        for (int i = 1; i <= 3; i++) journal.apply(0, new Material<>(i));
+        journal.close();
+
+        // 第 2 条记录的数据校验失败：其后的记录不再回放
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(FILE_HEADER + 2 * RECORD - 1);
+            raf.write(0x7f);
+        } finally {
+            raf.close();
+        }
+        assertEquals(Arrays.asList(1), materials(open(0).recover(0)));
+    }
+
+    @Test(timeout = 10000)
+    public void materialRejectedAsSuccessfulIsNotRecovered() throws Exception {
+        final CountDownLatch idle = new CountDownLatch(1);
+        procedurer = new Procedurer<Material<Integer>, Integer>(0, true) {
+            @Override
+            public Material<Integer> onProcess(Material<Integer> material) {
+                return new Material<>(material.material(), true);
+            }
+
+            @Override
+            public void onComplete() {
+                if (getMetrics().succeeded() > 0) idle.countDown();
+            }
+        };
+        procedurer.setJournal(open(0));
+        procedurer.apply(new Material<>(1));
+        assertTrue(idle.await(5000, TimeUnit.MILLISECONDS));
+
+        // 原料列表已满时持锁添加：已成功的 1 不记录 apply，也不挤出其他原料
+        procedurer.pauseLoop();
+        procedurer.setCapacity(1, IProcedure.Overflow.DROP_OLDEST);
+        List<Material<Integer>> ms = new ArrayList<>();
+        ms.add(new Material<>(2));
+        ms.add(new Material<>(3));
+        ms.add(new Material<>(1));
+        procedurer.apply(ms);
+        assertEquals(1, procedurer.count());
+
+        // 进程终止后重启
+        assertEquals(Arrays.asList(3), materials(open(0).recover(0)));
+    }
+}
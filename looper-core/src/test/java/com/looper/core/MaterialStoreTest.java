@@ -0,0 +1,175 @@
+package com.looper.core;
+
+import com.looper.Material;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MaterialStoreTest {
+    private static final long MS = 1000000;
+
+    private MaterialStore<Item> store;
+    private long base;
+
+    @Before
+    public void setUp() {
+        store = new MaterialStore<>();
+        base = System.nanoTime();
+    }
+
+    /**
+     * 原料 key 为 name，分区键为 partition
+     */
+    private static class Item extends Material<String> {
+        private final String partition;
+
+        Item(String name, int priority, String partition) {
+            super(name, false, priority);
+            this.partition = partition;
+        }
+
+        @Override
+        public Object partitionKey() {
+            return partition;
+        }
+    }
+
+    private static Item item(String name) {
+        return new Item(name, 0, name);
+    }
+
+    @Test
+    public void duplicateWhileRunningIsNotPolledUntilFinished() {
+        Item first = item("a");
+        assertEquals(1, store.apply(first));
+        assertSame(first, store.poll());
+        assertEquals(1, store.runningCount());
+
+        // 处理中重复添加：进入队列，但不会被并行弹出
+        Item duplicate = item("a");
+        assertEquals(1, store.apply(duplicate));
+        assertTrue(store.contains(duplicate));
+        assertNull(store.poll());
+        assertTrue(store.claim(item("b")));
+        assertFalse(store.claim(item("a")));
+
+        store.finish(first);
+        assertSame(duplicate, store.poll());
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void successfulMaterialIsRejectedAndFailedIsReadded() {
+        Item ok = item("ok");
+        store.success(ok);
+        assertTrue(store.isSuccess(item("ok")));
+        assertEquals(0, store.apply(item("ok")));
+        assertEquals(0, store.size());
+
+        Item failed = item("failed");
+        store.error(failed);
+        assertEquals(1, store.errorCount());
+        assertEquals(1, store.apply(item("failed")));
+        assertEquals(0, store.errorCount());
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void priorityOrderWithoutAging() {
+        store.setAging(0);
+        store.apply(new Item("low1", 0, "low1"), base);
+        store.apply(new Item("high1", 2, "high1"), base + MS);
+        store.apply(new Item("low2", 0, "low2"), base + 2 * MS);
+        store.apply(new Item("high2", 2, "high2"), base + 3 * MS);
+        store.apply(new Item("mid", 1, "mid"), base + 4 * MS);
+        // 高优先级在前 同优先级先进先出；不老化时等待再久也不提升
+        long now = base + 1000 * MS;
+        String[] expected = {"high1", "high2", "mid", "low1", "low2"};
+        for (String name : expected) {
+            assertEquals(name, store.poll(now).material());
+        }
+        assertNull(store.poll(now));
+    }
+
+    @Test
+    public void agingPromotesLongWaitingMaterials() {
+        store.setAging(10);
+        store.apply(new Item("low", 0, "low"), base);
+        store.apply(new Item("high", 1, "high"), base + 25 * MS);
+        // low 已等待 3 个老化间隔 有效优先级 3，高于等待不足 1 个间隔的 high
+        assertEquals("low", store.poll(base + 30 * MS).material());
+
+        // 等待时间相近时 仍按优先级
+        store.apply(new Item("low2", 0, "low2"), base + 30 * MS);
+        assertEquals("high", store.poll(base + 35 * MS).material());
+        assertEquals("low2", store.poll(base + 35 * MS).material());
+    }
+
+    @Test
+    public void reapplyAtNewPriorityReplacesEntryWithSingleLevel() {
+        Item low = new Item("a", 0, "a");
+        store.apply(low, base);
+        // 仅一级时以新的优先级重复添加：替换原有原料 而非再添加一个
+        Item high = new Item("a", 3, "a");
+        assertTrue(store.contains(high));
+        assertEquals(1, store.apply(high, base + MS));
+        assertEquals(1, store.size());
+
+        assertSame(high, store.poll());
+        assertEquals(0, store.size());
+        store.finish(high);
+        assertNull(store.poll());
+    }
+
+    @Test
+    public void partitionIsProcessedExclusively() {
+        store.setPartitions(4);
+        Item a1 = new Item("a1", 0, "a");
+        Item a2 = new Item("a2", 0, "a");
+        Item b1 = new Item("b1", 0, "b");
+        store.apply(a1, base);
+        store.apply(a2, base + MS);
+        store.apply(b1, base + 2 * MS);
+
+        assertSame(a1, store.poll());
+        // 分区 a 处理中：跳过 a2
+        assertSame(b1, store.poll());
+        assertNull(store.poll());
+        assertFalse(store.claim(new Item("a3", 0, "a")));
+
+        store.finish(a1);
+        assertSame(a2, store.poll());
+        store.finish(a2);
+        store.finish(b1);
+        assertEquals(0, store.runningCount());
+    }
+
+    @Test
+    public void retryHoldsPartitionAndResumesFirst() {
+        store.setPartitions(4);
+        Item a1 = new Item("a1", 0, "a");
+        Item a2 = new Item("a2", 0, "a");
+        store.apply(a1, base);
+        store.apply(a2, base + MS);
+
+        assertSame(a1, store.poll());
+        // a1 失败待重试：等待期间占用分区
+        store.delay(a1, 100);
+        store.finish(a1);
+        assertTrue(store.isRetrying(a1));
+        assertNull(store.poll());
+
+        assertEquals(0, store.promote(99));
+        assertEquals(1, store.promote(100));
+        // 重试的原料回到分区最前
+        assertSame(a1, store.poll());
+        store.finish(a1);
+        assertSame(a2, store.poll());
+    }
+}
@@ -0,0 +1,125 @@
+package com.looper.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MpscArrayQueueTest {
+
+    @Test
+    public void capacityRoundsUpToPowerOfTwo() {
+        assertEquals(1, new MpscArrayQueue<Integer>(0).capacity());
+        assertEquals(8, new MpscArrayQueue<Integer>(5).capacity());
+        assertEquals(16, new MpscArrayQueue<Integer>(16).capacity());
+    }
+
+    @Test
+    public void fullAndEmptyBoundaries() {
+        MpscArrayQueue<Integer> queue = new MpscArrayQueue<>(4);
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(i, 100 + i));
+        }
+        assertEquals(4, queue.size());
+        // 已满 不阻塞
+        assertFalse(queue.offer(4));
+        assertEquals(4, queue.size());
+
+        assertEquals(Integer.valueOf(0), queue.poll());
+        assertEquals(100, queue.lastTime());
+        // 出队一个后可再入队一个
+        assertTrue(queue.offer(4, 104));
+        assertFalse(queue.offer(5));
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(Integer.valueOf(i), queue.poll());
+            assertEquals(100 + i, queue.lastTime());
+        }
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void wrapsAroundManyTimes() {
+        MpscArrayQueue<Integer> queue = new MpscArrayQueue<>(4);
+        int next = 0;
+        int expected = 0;
+        // 每轮写入 3 个取出 3 个，写入位置跨过槽位数组末尾
+        for (int round = 0; round < 1000; round++) {
+            for (int i = 0; i < 3; i++) {
+                assertTrue(queue.offer(next, next));
+                next++;
+            }
+            for (int i = 0; i < 3; i++) {
+                assertEquals(Integer.valueOf(expected), queue.poll());
+                assertEquals(expected, queue.lastTime());
+                expected++;
+            }
+            assertNull(queue.poll());
+        }
+        assertEquals(3000, next);
+    }
+
+    @Test(timeout = 20000)
+    public void keepsPerProducerOrderWithSingleConsumer() throws Exception {
+        final int producers = 4;
+        final int count = 100000;
+        // 容量小于写入量：生产者在队列满时重试，消费者持续取出
+        final MpscArrayQueue<long[]> queue = new MpscArrayQueue<>(64);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < count; i++) {
+                            long[] e = new long[]{producer, i};
+                            while (!queue.offer(e, producer)) {
+                                Thread.yield();
+                            }
+                        }
+                    } catch (Throwable e) {
+                        error.set(e);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        long[] expected = new long[producers];
+        int received = 0;
+        while (received < producers * count) {
+            long[] e = queue.poll();
+            if (null == e) {
+                Thread.yield();
+                continue;
+            }
+            int producer = (int) e[0];
+            // 同一生产者的元素按写入顺序出队 不丢失不重复
+            assertEquals(expected[producer], e[1]);
+            assertEquals(producer, queue.lastTime());
+            expected[producer]++;
+            received++;
+        }
+        for (Thread thread : threads) thread.join();
+        assertNull(error.get());
+        assertNull(queue.poll());
+        for (int p = 0; p < producers; p++) {
+            assertEquals(count, expected[p]);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.looper.core;
+
+import com.looper.Logger;
+import com.looper.Material;
+import com.looper.interfaces.IMetrics;
+import com.looper.interfaces.IPromise;
+import com.looper.interfaces.IResultCache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+public class ProcedurerTest {
+    private Procedurer<Material<Integer>, Integer> procedurer;
+
+    @Before
+    public void setUp() {
+        Logger.setDebug(false);
+    }
+
+    @After
+    public void tearDown() {
+        if (null != procedurer) procedurer.release();
+    }
+
+    /**
+     * 10 号原料始终抛出异常，其余成功
+     */
+    private Procedurer<Material<Integer>, Integer> throwing(final AtomicInteger calls, final CountDownLatch idle) {
+        return new Procedurer<Material<Integer>, Integer>(0, true) {
+            @Override
+            public Material<Integer> onProcess(Material<Integer> material) {
+                calls.incrementAndGet();
+                if (material.material() == 10) throw new IllegalStateException("boom");
+                return new Material<>(material.material(), true);
+            }
+
+            @Override
+            public void onComplete() {
+                // 添加前的轮训也会回调
+                if (calls.get() > 0) idle.countDown();
+            }
+        };
+    }
+
+    private void apply(int count) {
+        List<Material<Integer>> materials = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) materials.add(new Material<>(i));
+        // 添加期间不处理：已添加的处理完而其余尚未添加时 也会回调 onComplete
+        procedurer.pauseLoop();
+        procedurer.apply(materials);
+        procedurer.resumeLoop();
+    }
+
+    @Test(timeout = 10000)
+    public void exceptionIsFailedAttemptAndLoopContinues() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch idle = new CountDownLatch(1);
+        procedurer = throwing(calls, idle);
+        procedurer.setMaxTry(3);
+        apply(100);
+        assertTrue(idle.await(5000, TimeUnit.MILLISECONDS));
+        IMetrics metrics = procedurer.getMetrics();
+        // 99 个成功 + 抛出异常的原料尝试 3 次
+        assertEquals(102, calls.get());
+        assertEquals(0, procedurer.count());
+        assertEquals(99, metrics.succeeded());
+        assertEquals(1, metrics.failed());
+        assertEquals(2, metrics.retried());
+        assertEquals(1, procedurer.getProcessStatus().error());
+    }
+
+    @Test(timeout = 10000)
+    public void exceptionInParallelWorkers() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch idle = new CountDownLatch(1);
+        procedurer = throwing(calls, idle);
+        procedurer.setMaxTry(2);
+        procedurer.setConcurrency(4);
+        apply(100);
+        assertTrue(idle.await(5000, TimeUnit.MILLISECONDS));
+        assertEquals(0, procedurer.count());
+        assertEquals(99, procedurer.getMetrics().succeeded());
+        assertEquals(1, procedurer.getMetrics().failed());
+    }
+
+    @Test(timeout = 10000)
+    public void batchExceptionFailsWholeBatchOnce() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch idle = new CountDownLatch(1);
+        procedurer = throwing(calls, idle);
+        procedurer.setMaxTry(2);
+        procedurer.setBatch(5, 10);
+        apply(100);
+        assertTrue(idle.await(5000, TimeUnit.MILLISECONDS));
+        IMetrics metrics = procedurer.getMetrics();
+        assertEquals(0, procedurer.count());
+        // 含 10 号原料的整批失败重试，重试后 10 号再次使所在批失败
+        assertEquals(metrics.processed(), metrics.succeeded() + metrics.failed() + metrics.retried());
+        assertTrue(metrics.failed() >= 1);
+        assertEquals(100, metrics.succeeded() + metrics.failed());
+    }
+
+    @Test(timeout = 10000)
+    public void cacheHitForwardsCopyOfCachedResult() throws Exception {
+        final List<Material<Integer>> results = new ArrayList<>();
+        final CountDownLatch first = new CountDownLatch(1);
+        final CountDownLatch processed = new CountDownLatch(2);
+        procedurer = new Procedurer<Material<Integer>, Integer>(0, true) {
+            @Override
+            public Material<Integer> onProcess(Material<Integer> material) {
+                return new Material<>(material.material(), true);
+            }
+
+            @Override
+            protected void onAfterProcess(Material<Integer> material, Material<Integer> result) {
+                // 下道工序修改流转的结果
+                result.setCount(5);
+                synchronized (results) {
+                    results.add(result);
+                }
+                first.countDown();
+                processed.countDown();
+            }
+        };
+        IResultCache<Material<Integer>> cache = ResultCache.lru(10, 0);
+        procedurer.setResultCache(cache);
+        procedurer.apply(new Material<>(1));
+        assertTrue(first.await(5000, TimeUnit.MILLISECONDS));
+        // 清空成功集合后再次添加 命中缓存
+        procedurer.clear();
+        procedurer.apply(new Material<>(1));
+        assertTrue(processed.await(5000, TimeUnit.MILLISECONDS));
+        assertEquals(1, procedurer.getMetrics().cacheHits());
+        Material<Integer> cached = cache.get(1);
+        assertEquals(0, cached.getCount());
+        assertNotSame(cached, results.get(0));
+        assertNotSame(cached, results.get(1));
+        assertNotSame(results.get(0), results.get(1));
+        assertEquals(Integer.valueOf(1), results.get(1).material());
+        assertTrue(results.get(1).state());
+    }
+
+    @Test(timeout = 10000)
+    public void duplicateAppliedWhileRunningIsNotProcessedInParallel() throws Exception {
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger parallel = new AtomicInteger();
+        final AtomicInteger maxParallel = new AtomicInteger();
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch idle = new CountDownLatch(1);
+        procedurer = new Procedurer<Material<Integer>, Integer>(0, true) {
+            @Override
+            public Material<Integer> onProcess(Material<Integer> material) {
+                int current = parallel.incrementAndGet();
+                maxParallel.set(Math.max(maxParallel.get(), current));
+                calls.incrementAndGet();
+                running.countDown();
+                try {
+                    release.await(5000, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                parallel.decrementAndGet();
+                return new Material<>(material.material(), true);
+            }
+
+            @Override
+            public void onComplete() {
+                if (calls.get() > 0) idle.countDown();
+            }
+        };
+        procedurer.setConcurrency(4);
+        procedurer.apply(new Material<>(1));
+        assertTrue(running.await(5000, TimeUnit.MILLISECONDS));
+        // 处理中重复添加：经接收队列进入原料列表，空闲的工作线程也不会并行处理同一原料
+        for (int i = 0; i < 3; i++) {
+            assertEquals(1, procedurer.apply(new Material<>(1)));
+        }
+        Thread.sleep(50);
+        assertEquals(1, calls.get());
+        release.countDown();
+        assertTrue(idle.await(5000, TimeUnit.MILLISECONDS));
+        assertEquals(1, maxParallel.get());
+        assertEquals(0, procedurer.count());
+        // 已处理成功：不再添加
+        assertEquals(0, procedurer.apply(new Material<>(1)));
+    }
+
+    @Test(timeout = 10000)
+    public void applyWhilePromisePendingStartsNextMaterial() throws Exception {
+        final List<IPromise<Material<Integer>>> promises = new ArrayList<>();
+        final CountDownLatch first = new CountDownLatch(1);
+        final CountDownLatch second = new CountDownLatch(2);
+        final CountDownLatch idle = new CountDownLatch(1);
+        procedurer = new Procedurer<Material<Integer>, Integer>(0, true) {
+            @Override
+            public Material<Integer> onProcess(Material<Integer> material) {
+                return null;
+            }
+
+            @Override
+            public void onProcessAsync(Material<Integer> material, IPromise<Material<Integer>> promise) {
+                synchronized (promises) {
+                    promises.add(promise);
+                }
+                first.countDown();
+                second.countDown();
+            }
+
+            @Override
+            public void onComplete() {
+                if (getMetrics().succeeded() == 2) idle.countDown();
+            }
+        };
+        procedurer.setAsync(10);
+        procedurer.apply(new Material<>(1));
+        assertTrue(first.await(5000, TimeUnit.MILLISECONDS));
+        // 等待轮训因原料列表为空而停止
+        Thread.sleep(50);
+        // 1 的结果未返回时添加 2：不等待 1 完成即发起
+        procedurer.apply(new Material<>(2));
+        assertTrue(second.await(5000, TimeUnit.MILLISECONDS));
+        assertEquals(2, procedurer.getMetrics().processed());
+
+        synchronized (promises) {
+            for (IPromise<Material<Integer>> promise : promises) {
+                promise.complete(new Material<>(0, true));
+            }
+        }
+        assertTrue(idle.await(5000, TimeUnit.MILLISECONDS));
+        assertEquals(0, procedurer.count());
+    }
+}
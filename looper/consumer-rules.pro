@@ -0,0 +1,2 @@
+# Platform 通过反射加载
+-keep class com.looper.android.AndroidPlatform { <init>(); }
@@ -0,0 +1,22 @@
+package com.looper.android;
+
+import android.util.Log;
+
+import com.looper.Platform;
+import com.looper.interfaces.IScheduler;
+
+/**
+ * Android 平台：由 Platform 反射加载
+ */
+public class AndroidPlatform extends Platform {
+
+    @Override
+    public IScheduler.Factory schedulerFactory() {
+        return HandlerScheduler.FACTORY;
+    }
+
+    @Override
+    public void log(String tag, String msg) {
+        Log.e(tag, msg);
+    }
+}
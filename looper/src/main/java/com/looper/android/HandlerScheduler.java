@@ -0,0 +1,49 @@
+package com.looper.android;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+
+import com.looper.interfaces.IScheduler;
+
+/**
+ * 基于 HandlerThread 的调度器：
+ * 每个工序一个 HandlerThread，任务通过 Handler 投递到该线程串行执行。
+ */
+public class HandlerScheduler implements IScheduler {
+    public static final Factory FACTORY = new Factory() {
+        @Override
+        public IScheduler create(String name) {
+            return new HandlerScheduler(name);
+        }
+    };
+
+    private final HandlerThread thread;
+    private Handler handler;
+
+    public HandlerScheduler(String name) {
+        thread = new HandlerThread(name);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    @Override
+    public void schedule(Runnable task, long delay) {
+        if (null == handler) return;
+        handler.removeCallbacks(task);
+        handler.postDelayed(task, delay);
+    }
+
+    @Override
+    public void cancel(Runnable task) {
+        if (null == handler) return;
+        handler.removeCallbacks(task);
+    }
+
+    @Override
+    public void release() {
+        if (null == handler) return;
+        handler.removeCallbacksAndMessages(null);
+        handler = null;
+        thread.quitSafely();
+    }
+}